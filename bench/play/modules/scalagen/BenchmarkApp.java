@@ -0,0 +1,108 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A scratch application for the benchmarks to generate into. The generator
+ * reads <code>application.path</code> once, when its classes are loaded, so
+ * the application has to be created before any of them is used.
+ */
+public class BenchmarkApp {
+
+	/** attribute types, cycled through when building attributes */
+	private static final String[] TYPES = { "String", "int", "Date",
+			"Boolean", "Double", "Long", "String", "BigDecimal", "Role" };
+
+	private final File directory;
+	private final PrintStream out;
+
+	private BenchmarkApp(File directory) {
+		this.directory = directory;
+		this.out = System.out;
+	}
+
+	/**
+	 * Creates an empty application in a temporary directory and points the
+	 * generator at it. The progress messages of the generator are discarded
+	 * until the application is deleted.
+	 *
+	 * @return the application
+	 */
+	public static BenchmarkApp create() {
+		try {
+			File directory = File.createTempFile("scalagen-bench", "");
+			if (!directory.delete() || !directory.mkdir()) {
+				throw new IOException("Could not create " + directory);
+			}
+			System.setProperty("application.path", directory
+					.getAbsolutePath());
+
+			BenchmarkApp app = new BenchmarkApp(directory);
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) {
+				}
+
+				public void write(byte[] b, int off, int len) {
+				}
+			}));
+			return app;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Deletes the application and restores the standard output.
+	 */
+	public void delete() {
+		System.setOut(out);
+		delete(directory);
+	}
+
+	/**
+	 * Builds the attributes of an entity, of all kinds of types.
+	 *
+	 * @param count
+	 *            number of attributes
+	 * @return the attributes, in order
+	 */
+	public static Map<String, String> attributes(int count) {
+		Map<String, String> attributes = new LinkedHashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			String type = TYPES[i % TYPES.length];
+			attributes.put(Character.toLowerCase(type.charAt(0))
+					+ type.substring(1) + i, type);
+		}
+		return attributes;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
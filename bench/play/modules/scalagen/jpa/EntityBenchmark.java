@@ -0,0 +1,92 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.jpa;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import play.modules.scalagen.BenchmarkApp;
+import play.modules.scalagen.util.GenerationManifest;
+
+/**
+ * Measures generating the whole JPA scaffold of an entity, i.e. its model,
+ * views, tests and controller, into a scratch application. Files whose
+ * content does not change are not written again, as when regenerating an
+ * application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntityBenchmark {
+
+	@Param( { "5", "20", "50", "200" })
+	public int attributeCount;
+
+	private BenchmarkApp app;
+	private Map<String, String> attributes;
+	private Map<String, String> options;
+
+	@Setup
+	public void setUp() {
+		app = BenchmarkApp.create();
+		attributes = BenchmarkApp.attributes(attributeCount);
+		options = new HashMap<String, String>();
+
+		GenerationManifest.load();
+		UtilsGenerator.generate();
+	}
+
+	@TearDown
+	public void tearDown() {
+		app.delete();
+	}
+
+	@Benchmark
+	public void model() {
+		ModelGenerator.generate("PurchaseOrder", attributes, "jpa", options);
+	}
+
+	@Benchmark
+	public void controller() {
+		ControllerGenerator.generate("PurchaseOrder", attributes, "jpa",
+				options);
+	}
+
+	@Benchmark
+	public void views() {
+		ViewGenerator.generate("PurchaseOrder", attributes, options);
+	}
+
+	@Benchmark
+	public void scaffold() {
+		ModelGenerator.generate("PurchaseOrder", attributes, "jpa", options);
+		ViewGenerator.generate("PurchaseOrder", attributes, options);
+		SeleniumTestGenerator.generate("PurchaseOrder", attributes);
+		ControllerGenerator.generate("PurchaseOrder", attributes, "jpa",
+				options);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures reading templates from the classpath and filling in their
+ * placeholders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplatesBenchmark {
+
+	@Param( { "jpa/model", "jpa/controller", "jpa/view_form" })
+	public String template;
+
+	private CompiledTemplate compiled;
+	private Map<String, String> values;
+
+	@Setup
+	public void setUp() {
+		compiled = TemplatesHelper.load(template);
+
+		values = new HashMap<String, String>();
+		values.put("EntityName", "PurchaseOrder");
+		values.put("EntityNameVar", "purchaseOrder");
+		values.put("TableName", "purchase_orders");
+	}
+
+	/**
+	 * Reads and parses a template, as on its first use in a run.
+	 */
+	@Benchmark
+	public CompiledTemplate load() {
+		return TemplatesHelper.load(template);
+	}
+
+	/**
+	 * Gets a template once it has been read, as on every later use.
+	 */
+	@Benchmark
+	public CompiledTemplate compile() {
+		return TemplatesHelper.compile(template);
+	}
+
+	/**
+	 * Fills in the placeholders of a template, leaving those without a value.
+	 */
+	@Benchmark
+	public String render() {
+		return compiled.render(values);
+	}
+}
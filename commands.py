@@ -1,13 +1,17 @@
 # Here you can create play commands that are specific to the module, and extend existing commands
 import os, os.path
 import sys
+import socket
 import subprocess
 
 MODULE = 'scalagen'
 
 # Commands that are specific to your module
 
-COMMANDS = ['scalagen:generate', 'scalagen:g', 'scalagen:jquery', 'scalagen:j']
+COMMANDS = ['scalagen:generate', 'scalagen:g', 'scalagen:jquery', 'scalagen:j', 'scalagen:daemon', 'scalagen:d']
+
+# Port of the generator daemon, see play.modules.scalagen.GeneratorDaemon
+DAEMON_PORT = int(os.environ.get('SCALAGEN_DAEMON_PORT', '7879'))
 
 def execute(**kargs):
     command = kargs.get("command")
@@ -18,13 +22,20 @@ def execute(**kargs):
     if command in ("scalagen:generate", "scalagen:g"):
         print "~ Generating code"
         print "~ "
-        java_cmd = app.java_cmd([], None, "play.modules.scalagen.Generator", args)
-        try:
-            subprocess.call(java_cmd, env=os.environ)
-        except OSError:
-            print "Could not execute the java executable, please make sure the JAVA_HOME environment variable is set properly (the java executable should reside at JAVA_HOME/bin/java). "
-            sys.exit(-1)
+        if not forward_to_daemon(app, args):
+            java_cmd = app.java_cmd([], None, "play.modules.scalagen.Generator", args)
+            run_java(java_cmd)
         print
+
+    if command in ("scalagen:daemon", "scalagen:d"):
+        if "--stop" in args:
+            if not forward_to_daemon(app, ["--stop-daemon"]):
+                print "~ No scalagen daemon is running for this application"
+            return
+        print "~ Starting the scalagen daemon on port %s (Ctrl+C to stop)" % DAEMON_PORT
+        print "~ "
+        java_cmd = app.java_cmd(["-Dscalagen.daemon.port=%s" % DAEMON_PORT], None, "play.modules.scalagen.GeneratorDaemon", [])
+        run_java(java_cmd)
 	
     if command in ("scalagen:jquery", "scalagen:j"):
         app.override('app/views/main.scala.html', 'app/views/main.scala.html')
@@ -40,6 +51,37 @@ def execute(**kargs):
         app.override('public/images/ui-icons_469bdd_256x240.png', 'public/images/ui-icons_469bdd_256x240.png')
         print "~~~~~ Copied JQuery files"
 
+def run_java(java_cmd):
+    try:
+        subprocess.call(java_cmd, env=os.environ)
+    except OSError:
+        print "Could not execute the java executable, please make sure the JAVA_HOME environment variable is set properly (the java executable should reside at JAVA_HOME/bin/java). "
+        sys.exit(-1)
+
+# Sends the request to a running generator daemon and prints its output.
+# Returns False if there is no daemon serving this application, in which
+# case the caller should run the generator itself.
+def forward_to_daemon(app, args):
+    try:
+        sock = socket.create_connection(("127.0.0.1", DAEMON_PORT), 1)
+    except socket.error:
+        return False
+
+    try:
+        sock.settimeout(None)
+        sock.sendall("\n".join([app.path] + list(args)) + "\n\n")
+        for line in sock.makefile("r"):
+            line = line.rstrip("\r\n")
+            if line == "~scalagen:refused":
+                return False
+            if line.startswith("~scalagen:done "):
+                return True
+            print line
+        # the daemon went away half way, the generation is safe to repeat
+        return False
+    finally:
+        sock.close()
+
 # This will be executed before any command (new, run...)
 def before(**kargs):
     command = kargs.get("command")
@@ -28,7 +28,6 @@ import play.classloading.enhancers.LocalvariablesNamesEnhancer.{ LocalVariablesS
 import play.data.validation.Required
 import play.data.validation.RequiredCheck
 import play.exceptions.TemplateNotFoundException
-import play.libs.Mail
 import play.templates.TemplateLoader
 
 /**
@@ -141,7 +140,8 @@ trait EmailNotifier extends LocalVariablesSupport {
    * @param templateName : Full path and name of the template (minus the extension) as relative to
    * the views directory. It expects forward slashes ("/") in the path (even on Windows boxes).
    * @param args : Any arguments that must be bound to the template to generate the email body.
-   * @return
+   * @return completes once the email is sent, which is done in the background by the
+   * <code>MailQueue</code>
    */
   def send(templateName: String, args: AnyRef*): Future[java.lang.Boolean] = {
 
@@ -183,7 +183,7 @@ trait EmailNotifier extends LocalVariablesSupport {
     // now flush the stored context
     notifications.remove
 
-    Mail.send(email)
+    MailQueue.enqueue(email)
   }
 
   /**
@@ -0,0 +1,304 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package notifiers
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+import javax.mail.MessagingException
+
+import scala.collection.JavaConversions._
+
+import org.apache.commons.mail.Email
+
+import play.Logger
+import play.Play
+import play.exceptions.MailException
+import play.libs.Mail
+
+/**
+ * <p>Delivers emails in the background. Emails are put on a bounded queue and worker threads take
+ * them off in batches, sending each batch over a single connection to the mail server. Emails
+ * that could not be sent are retried, waiting twice as long before each attempt, and given up on
+ * if the queue is full when their retry is due.
+ * <p>The queue is set up from application.conf:
+ * <pre>
+ * mail.queue.capacity=1000   emails waiting at most, further ones are refused
+ * mail.queue.workers=2       threads sending emails
+ * mail.queue.batch=20        emails sent per connection at most
+ * mail.queue.attempts=3      attempts to send an email before giving up on it
+ * mail.queue.backoff=1000    milliseconds to wait before the first retry
+ * </pre>
+ */
+object MailQueue {
+
+  private val capacity = setting("mail.queue.capacity", 1000)
+  private val workers = setting("mail.queue.workers", 2)
+  private val batchSize = setting("mail.queue.batch", 20)
+  private val attempts = setting("mail.queue.attempts", 3)
+  private val backoff = setting("mail.queue.backoff", 1000)
+
+  /** how long a request waits for room on a full queue before the email is refused */
+  private val OfferTimeout = 1000L
+
+  private val queue = new LinkedBlockingQueue[Delivery](capacity)
+  private val retries = Executors.newSingleThreadScheduledExecutor(daemon("mail-retry"))
+
+  /** sends the emails, replaced by tests to send nowhere */
+  @volatile var transport: MailTransport =
+    if ("mock" == Play.configuration.getProperty("mail.smtp", "") && Play.mode == Play.Mode.DEV) new PlayMailTransport
+    else new SmtpTransport
+
+  private val sent = new AtomicLong
+  private val failed = new AtomicLong
+  private val retried = new AtomicLong
+  private val totalLatency = new AtomicLong
+  private val maxLatency = new AtomicLong
+
+  {
+    val pool = Executors.newFixedThreadPool(workers, daemon("mail-worker"))
+    for (i <- 1 to workers) {
+      pool.execute(new Runnable {
+        def run = work
+      })
+    }
+  }
+
+  /**
+   * Queues an email for delivery.
+   *
+   * @param email
+   * @return completes with true once the email is sent, or false once it is given up on
+   */
+  def enqueue(email: Email): Future[java.lang.Boolean] = {
+    val delivery = new Delivery(email)
+    if (!queue.offer(delivery, OfferTimeout, TimeUnit.MILLISECONDS)) {
+      throw new MailException("The mail queue is full (" + capacity + " emails)")
+    }
+    delivery
+  }
+
+  /** emails waiting to be sent */
+  def depth: Int = queue.size
+
+  /** emails sent since startup */
+  def sentCount: Long = sent.get
+
+  /** emails given up on since startup */
+  def failedCount: Long = failed.get
+
+  /** attempts to send an email that were retried since startup */
+  def retriedCount: Long = retried.get
+
+  /** average time from queueing an email to sending it, in milliseconds */
+  def averageLatencyMillis: Long = {
+    val count = sent.get
+    if (count != 0) totalLatency.get / count else 0
+  }
+
+  /** longest time from queueing an email to sending it, in milliseconds */
+  def maxLatencyMillis: Long = maxLatency.get
+
+  private def work {
+    while (true) {
+      val batch = new java.util.ArrayList[Delivery]
+      batch.add(queue.take)
+      queue.drainTo(batch, batchSize - 1)
+
+      try {
+        deliver(batch.toList)
+      } catch {
+        case e: Exception => Logger.error(e, "Could not deliver %s emails", batch.size.toString)
+      }
+    }
+  }
+
+  private def deliver(batch: Seq[Delivery]) {
+    val results = transport.send(batch.map(_.email))
+
+    for ((delivery, result) <- batch.zip(results)) {
+      result match {
+        case None =>
+          val latency = (System.nanoTime - delivery.queued) / 1000000
+          sent.incrementAndGet
+          totalLatency.addAndGet(latency)
+          var max = maxLatency.get
+          while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get
+          }
+          delivery.complete(true)
+
+        case Some(e) if delivery.attempt < attempts =>
+          val delay = backoff.toLong << (delivery.attempt - 1)
+          Logger.warn("Could not send email to %s, retrying in %s ms: %s",
+            delivery.email.getToAddresses, delay.toString, e.getMessage)
+          delivery.attempt += 1
+          retried.incrementAndGet
+          retries.schedule(new Runnable {
+            // the retry thread serves every email, so it never waits for room on a full queue
+            def run = requeue(delivery)
+          }, delay, TimeUnit.MILLISECONDS)
+
+        case Some(e) =>
+          Logger.error(e, "Could not send email to %s, giving up", delivery.email.getToAddresses)
+          failed.incrementAndGet
+          delivery.complete(false)
+      }
+    }
+  }
+
+  private def requeue(delivery: Delivery) {
+    if (!queue.offer(delivery)) {
+      Logger.error("Could not retry email to %s, the mail queue is full (%s emails), giving up",
+        delivery.email.getToAddresses, capacity.toString)
+      failed.incrementAndGet
+      delivery.complete(false)
+    }
+  }
+
+  private def setting(name: String, default: Int): Int = {
+    Integer.parseInt(Play.configuration.getProperty(name, default.toString))
+  }
+
+  private def daemon(name: String) = new ThreadFactory {
+    private val count = new AtomicInteger
+
+    def newThread(runnable: Runnable) = {
+      val thread = new Thread(runnable, name + "-" + count.incrementAndGet)
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
+
+/**
+ * An email on the queue, and the future result of its delivery.
+ */
+private class Delivery(val email: Email) extends Future[java.lang.Boolean] {
+
+  val queued = System.nanoTime
+  @volatile var attempt = 1
+
+  private val done = new CountDownLatch(1)
+  @volatile private var result = false
+
+  def complete(result: Boolean) {
+    this.result = result
+    done.countDown
+  }
+
+  def cancel(mayInterruptIfRunning: Boolean) = false
+  def isCancelled() = false
+  def isDone() = done.getCount == 0
+
+  def get(): java.lang.Boolean = {
+    done.await
+    result
+  }
+
+  def get(timeout: Long, unit: TimeUnit): java.lang.Boolean = {
+    if (!done.await(timeout, unit)) {
+      throw new TimeoutException
+    }
+    result
+  }
+}
+
+/**
+ * Sends emails to their recipients.
+ */
+trait MailTransport {
+
+  /**
+   * Sends a batch of emails.
+   *
+   * @param emails
+   * @return for each email, in order, None if it was sent or the reason it was not
+   */
+  def send(emails: Seq[Email]): Seq[Option[Exception]]
+}
+
+/**
+ * Sends a batch of emails over a single connection to the SMTP server configured for Play.
+ */
+class SmtpTransport extends MailTransport {
+
+  def send(emails: Seq[Email]): Seq[Option[Exception]] = {
+    val session = Mail.getSession
+    val protocol = session.getProperty("mail.transport.protocol")
+    val transport = session.getTransport(if (protocol != null) protocol else "smtp")
+
+    try {
+      transport.connect
+    } catch {
+      case e: MessagingException => return emails.map(email => Some(e))
+    }
+
+    try {
+      emails.map { email =>
+        try {
+          // fills in the default sender and reply-to, as Mail.send does
+          Mail.buildMessage(email)
+          email.setMailSession(session)
+          email.buildMimeMessage
+          val message = email.getMimeMessage
+          transport.sendMessage(message, message.getAllRecipients)
+          None
+        } catch {
+          case e: Exception => Some(e)
+        }
+      }
+    } finally {
+      transport.close
+    }
+  }
+}
+
+/**
+ * Hands the emails to Play one at a time, for its mock mailer in development.
+ */
+class PlayMailTransport extends MailTransport {
+
+  def send(emails: Seq[Email]): Seq[Option[Exception]] = {
+    emails.map { email =>
+      if (Mail.send(email).get.booleanValue) None
+      else Some(new MailException("Could not send the email"))
+    }
+  }
+}
+
+/**
+ * Keeps the emails instead of sending them, for tests.
+ */
+class InMemoryTransport extends MailTransport {
+
+  val sent = new CopyOnWriteArrayList[Email]
+
+  def send(emails: Seq[Email]): Seq[Option[Exception]] = {
+    emails.map { email =>
+      sent.add(email)
+      None
+    }
+  }
+}
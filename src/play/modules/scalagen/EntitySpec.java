@@ -0,0 +1,85 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen;
+
+import java.util.Map;
+
+/**
+ * Describes a single generation request: the command to run, the entity to
+ * generate, its attributes and any options.
+ */
+public class EntitySpec {
+
+	/** pagination of the grid, "offset" (default) or "keyset" */
+	public static final String PAGINATION = "pagination";
+
+	/**
+	 * how the grid counts records, "exact" (default), "cached[:seconds]" or
+	 * "hasmore"
+	 */
+	public static final String COUNT = "count";
+
+	/** comma separated names of the attributes to index */
+	public static final String INDEX = "index";
+
+	/** "true" to support conditional GETs in the generated controller */
+	public static final String HTTP_CACHE = "http-cache";
+
+	/**
+	 * second-level caching of a JPA model, "read-only", "read-write" or
+	 * "nonstrict"
+	 */
+	public static final String CACHE = "cache";
+
+	/** "true" to generate a load test of the routes of a scaffold */
+	public static final String BENCH = "bench";
+
+	/** "true" to record the timings of the controller actions in metrics */
+	public static final String INSTRUMENT = "instrument";
+
+	private String command;
+	private String entityName;
+	private Map<String, String> attributes;
+	private Map<String, String> options;
+
+	public EntitySpec(String command, String entityName,
+			Map<String, String> attributes, Map<String, String> options) {
+		this.command = command;
+		this.entityName = entityName;
+		this.attributes = attributes;
+		this.options = options;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @return the generation options, keyed by option name without the
+	 *         leading dashes
+	 */
+	public Map<String, String> getOptions() {
+		return options;
+	}
+}
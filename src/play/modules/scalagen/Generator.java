@@ -15,16 +15,33 @@
  */
 package play.modules.scalagen;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import play.Play;
+import play.modules.scalagen.jpa.BulkTestGenerator;
 import play.modules.scalagen.jpa.ControllerGenerator;
+import play.modules.scalagen.jpa.LoadTestGenerator;
 import play.modules.scalagen.jpa.ModelGenerator;
 import play.modules.scalagen.jpa.SeleniumTestGenerator;
 import play.modules.scalagen.jpa.UtilsGenerator;
 import play.modules.scalagen.jpa.ViewGenerator;
+import play.modules.scalagen.util.GenerationManifest;
+import play.modules.scalagen.util.TemplatesHelper;
+import play.modules.scalagen.util.Timings;
 
 /**
  * This is the entry point into the generator and is responsible for processing
@@ -34,17 +51,336 @@ import play.modules.scalagen.jpa.ViewGenerator;
  */
 public class Generator {
 
+	public static final String VERSION = "0.1";
+
+	private static final String[] COMMANDS = { "--model", "--model-jpa",
+			"--m", "--model-siena", "--ms", "--scaffold", "--scaffold-jpa",
+			"--s", "--scaffold-siena", "--ss" };
+
+	private static final String DEFAULT_BATCH_COMMAND = "--scaffold";
+
+	/** options that apply to an entity, each followed by a value */
+	private static final String[] ENTITY_OPTIONS = {
+			"--" + EntitySpec.PAGINATION, "--" + EntitySpec.COUNT,
+			"--" + EntitySpec.INDEX, "--" + EntitySpec.CACHE };
+
+	/** options that apply to an entity, without a value */
+	private static final String[] ENTITY_FLAGS = {
+			"--" + EntitySpec.HTTP_CACHE, "--" + EntitySpec.BENCH,
+			"--" + EntitySpec.INSTRUMENT };
+
 	public static void main(String[] args) {
 		File root = new File(System.getProperty("application.path"));
+		long started = System.nanoTime();
 		Play.init(root, System.getProperty("play.id", ""));
+		Timings.initialised(System.nanoTime() - started);
+
+		run(args);
+	}
+
+	/**
+	 * Processes a user request. Play must have been initialised already.
+	 * 
+	 * @param args
+	 *            the command line arguments
+	 */
+	public static void run(String[] args) {
+		File root = new File(System.getProperty("application.path"));
 
-		if (args.length == 0) {
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		boolean force = takeFlag(arguments, "--force");
+		boolean timed = takeFlag(arguments, "--timings");
+		String timingsJson = takeOption(arguments, "--timings-json", null);
+		// options given on the command line apply to all entities of a batch
+		Map<String, String> options = takeEntityOptions(arguments,
+				new HashMap<String, String>());
+		int threads;
+		try {
+			threads = Integer.parseInt(takeOption(arguments, "--threads", "1"));
+		} catch (NumberFormatException e) {
 			printHelp();
 			return;
 		}
 
+		if (arguments.isEmpty()) {
+			printHelp();
+			return;
+		}
+
+		List<EntitySpec> specs = new ArrayList<EntitySpec>();
+
+		if (arguments.get(0).equals("--batch")) {
+			if (arguments.size() < 2) {
+				printHelp();
+				return;
+			}
+			specs.addAll(readManifest(resolve(root, arguments.get(1)), options));
+		} else {
+			EntitySpec spec = parse(arguments, options);
+			if (spec == null) {
+				printHelp();
+				return;
+			}
+			specs.add(spec);
+		}
+
+		if (!timed && timingsJson == null) {
+			generate(specs, threads, force);
+			return;
+		}
+
+		Timings.start();
+		try {
+			generate(specs, threads, force);
+		} finally {
+			Timings.stop();
+			if (timed) {
+				System.out.println(Timings.report());
+			}
+			if (timingsJson != null) {
+				writeTimings(resolve(root, timingsJson));
+			}
+		}
+	}
+
+	/**
+	 * Writes the timings of the run as JSON, e.g. for a CI job to track them
+	 * over time.
+	 * 
+	 * @param file
+	 */
+	private static void writeTimings(File file) {
+		try {
+			TemplatesHelper.writeAtomically(file, Timings.toJson().getBytes(
+					"UTF-8"));
+			TemplatesHelper.syncDirectories();
+		} catch (IOException ex) {
+			throw new RuntimeException("Could not write timings " + file, ex);
+		}
+		System.out.println("* Timings written to " + file);
+	}
+
+	/**
+	 * Runs all the generation requests in a single process. The shared utility
+	 * classes are generated only once for the whole run, after which the
+	 * entities are generated independently of each other on a pool of the
+	 * given number of worker threads. Entities generated earlier from the same
+	 * inputs are skipped unless forced.
+	 * 
+	 * @param specs
+	 * @param threads
+	 * @param force
+	 *            regenerate entities even if they are up to date
+	 */
+	public static void generate(List<EntitySpec> specs, int threads,
+			boolean force) {
+		List<EntitySpec> runnable = new ArrayList<EntitySpec>();
+
+		GenerationManifest.load();
+		TemplatesHelper.resetDirectories();
+		ModelGenerator.resetCachedModels(specs);
+
+		for (EntitySpec spec : specs) {
+			if (!isKnownCommand(spec.getCommand())) {
+				System.out.println("* Unknown command " + spec.getCommand()
+						+ " for " + spec.getEntityName() + ". Skipping.");
+				continue;
+			}
+
+			if (!force
+					&& GenerationManifest.isUpToDate(spec.getEntityName(),
+							describe(spec))) {
+				System.out.println("* " + spec.getEntityName()
+						+ " is up to date. Skipping.");
+				continue;
+			}
+			runnable.add(spec);
+		}
+
+		try {
+			// the shared utilities are checked even if every entity is up to
+			// date, as they belong to none of them.
+			UtilsGenerator.generate();
+			if (!runnable.isEmpty()) {
+				run(runnable, threads);
+			}
+		} finally {
+			GenerationManifest.save();
+			TemplatesHelper.syncDirectories();
+		}
+	}
+
+	private static void run(List<EntitySpec> runnable, int threads) {
+		if (threads <= 1 || runnable.size() == 1) {
+			for (EntitySpec spec : runnable) {
+				generate(spec);
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,
+				runnable.size()));
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (final EntitySpec spec : runnable) {
+				results.add(pool.submit(new Runnable() {
+					public void run() {
+						generate(spec);
+					}
+				}));
+			}
+
+			// wait for every entity, then report the first failure if any.
+			Throwable failure = null;
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+			}
+
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure != null) {
+				throw new RuntimeException(failure);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void generate(EntitySpec spec) {
+		String command = spec.getCommand();
+		String entityName = spec.getEntityName();
+		Map<String, String> attributes = spec.getAttributes();
+		Map<String, String> options = spec.getOptions();
+
+		GenerationManifest.begin();
+
+		if (command.equals("--model") || command.equals("--model-jpa")
+				|| command.equals("--m")) {
+			ModelGenerator.generate(entityName, attributes, "jpa", options);
+		}
+
+		if (command.equals("--model-siena") || command.equals("--ms")) {
+			ModelGenerator.generate(entityName, attributes, "siena", options);
+		}
+
+		if (command.equals("--scaffold") || command.equals("--scaffold-jpa")
+				|| command.equals("--s")) {
+			ModelGenerator.generate(entityName, attributes, "jpa", options);
+			ViewGenerator.generate(entityName, attributes, options);
+			SeleniumTestGenerator.generate(entityName, attributes);
+			ControllerGenerator.generate(entityName, attributes, "jpa",
+					options);
+			BulkTestGenerator.generate(entityName, attributes);
+		}
+
+		if (command.equals("--scaffold-siena") || command.equals("--ss")) {
+			ModelGenerator.generate(entityName, attributes, "siena", options);
+			ViewGenerator.generate(entityName, attributes, options);
+			SeleniumTestGenerator.generate(entityName, attributes);
+			ControllerGenerator.generate(entityName, attributes, "siena",
+					options);
+			BulkTestGenerator.generate(entityName, attributes);
+		}
+
+		if (LoadTestGenerator.isBenchmarked(options)) {
+			// all the scaffold commands start with --s, models have no routes
+			if (command.startsWith("--s")) {
+				LoadTestGenerator.generate(entityName, attributes);
+			} else {
+				System.out.println("* Load tests need the routes of a scaffold, skipping them for "
+						+ entityName + ".");
+			}
+		}
+
+		GenerationManifest.end(entityName, describe(spec));
+	}
+
+	/**
+	 * Describes everything the generated code of an entity depends on.
+	 * 
+	 * @param spec
+	 * @return the description
+	 */
+	private static String describe(EntitySpec spec) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(VERSION).append("\n");
+		sb.append(GenerationManifest.getGeneratorFingerprint()).append("\n");
+		sb.append(spec.getCommand()).append("\n");
+		sb.append(spec.getEntityName()).append("\n");
+
+		// attribute order does not affect the generated code.
+		Map<String, String> attributes = new TreeMap<String, String>(
+				spec.getAttributes());
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			sb.append(attribute.getKey()).append(":")
+					.append(attribute.getValue()).append("\n");
+		}
+
+		// related models are joined in the queries of the controller unless
+		// they are cached, so caching them changes the generated code too.
+		for (String type : attributes.values()) {
+			if (!TypeRegistry.isRegistered(type)) {
+				sb.append("cached ").append(type).append(" ")
+						.append(ModelGenerator.isCached(type)).append("\n");
+			}
+		}
+
+		Map<String, String> options = new TreeMap<String, String>(
+				spec.getOptions());
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			sb.append("--").append(option.getKey()).append(" ")
+					.append(option.getValue()).append("\n");
+		}
+
+		return sb.toString();
+	}
+
+	private static boolean isKnownCommand(String command) {
+		for (String known : COMMANDS) {
+			if (known.equals(command)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Builds a generation request out of command line style arguments, i.e. a
+	 * command followed by the entity name, its attributes and options.
+	 * 
+	 * @param arguments
+	 * @param defaults
+	 *            options that apply unless provided in the arguments
+	 * @return the generation request, null if no entity name is given
+	 */
+	private static EntitySpec parse(List<String> arguments,
+			Map<String, String> defaults) {
+		arguments = new ArrayList<String>(arguments);
+		Map<String, String> options = takeEntityOptions(arguments,
+				new HashMap<String, String>(defaults));
+
+		String[] args = arguments.toArray(new String[arguments.size()]);
 		String command = args[0];
-		String entityName = args[1];
+		String entityName = args.length > 1 ? args[1] : null;
+		if (entityName == null || entityName.startsWith("--")
+				|| entityName.indexOf(":") != -1) {
+			StringBuilder line = new StringBuilder();
+			for (String arg : arguments) {
+				line.append(line.length() == 0 ? "" : " ").append(arg);
+			}
+			System.out.println("* No entity name in \"" + line
+					+ "\". Skipping.");
+			return null;
+		}
 		Map<String, String> attributes = new HashMap<String, String>();
 
 		// now lets build a map of different attributes specified.
@@ -54,13 +390,19 @@ public class Generator {
 				continue;
 			}
 
-			// each attribute should be of the form name:type
+			// each attribute should be of the form name:type[:indexed]
 			String[] entry = arg.split(":");
 			// the first element should be the key (attribute name)
 			String name = entry[0].trim();
 			// the first element should be the value (attribute type)
 			String type = entry[1].trim();
 
+			if (entry.length > 2 && entry[2].trim().equals("indexed")) {
+				String indexed = options.get(EntitySpec.INDEX);
+				options.put(EntitySpec.INDEX, indexed == null ? name
+						: indexed + "," + name);
+			}
+
 			// if fully qualified internal data types are provided, register on
 			// the fly.
 			if (TypeRegistry.isInternalDataType(type)
@@ -71,35 +413,125 @@ public class Generator {
 			attributes.put(name, type);
 		}
 
-		if (command.equals("--model") || command.equals("--model-jpa")
-				|| command.equals("--m")) {
-			UtilsGenerator.generate();
-			ModelGenerator.generate(entityName, attributes, "jpa");
+		return new EntitySpec(command, entityName, attributes, options);
+	}
+
+	/**
+	 * Reads a manifest of entities to generate. Each line describes one entity
+	 * in the same form as the command line, optionally without the command in
+	 * which case a JPA scaffold is generated, e.g.
+	 * 
+	 * <pre>
+	 * # comments and blank lines are ignored
+	 * User name:String login:String role:Role
+	 * --scaffold-siena Post title:String body:String
+	 * Event name:String startsAt:Date --pagination keyset
+	 * </pre>
+	 * 
+	 * @param manifest
+	 * @param options
+	 *            options that apply to all entities unless listed on a line
+	 * @return the generation requests, in the order listed
+	 */
+	private static List<EntitySpec> readManifest(File manifest,
+			Map<String, String> options) {
+		List<EntitySpec> specs = new ArrayList<EntitySpec>();
+
+		try {
+			BufferedReader br = new BufferedReader(new InputStreamReader(
+					new FileInputStream(manifest), "UTF-8"));
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					line = line.trim();
+					if (line.length() == 0 || line.startsWith("#")) {
+						continue;
+					}
+
+					String[] args = line.split("\\s+");
+					if (!args[0].startsWith("--")) {
+						String[] withCommand = new String[args.length + 1];
+						withCommand[0] = DEFAULT_BATCH_COMMAND;
+						System.arraycopy(args, 0, withCommand, 1, args.length);
+						args = withCommand;
+					}
+
+					EntitySpec spec = parse(Arrays.asList(args), options);
+					if (spec != null) {
+						specs.add(spec);
+					}
+				}
+			} finally {
+				br.close();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Could not read manifest " + manifest,
+					ex);
 		}
 
-        if (command.equals("--model-siena") || command.equals("--ms")) {
-            UtilsGenerator.generate();
-            ModelGenerator.generate(entityName, attributes, "siena");
-        }
+		return specs;
+	}
 
-		if (command.equals("--scaffold") || command.equals("--scaffold-jpa")
-				|| command.equals("--s")) {
-			UtilsGenerator.generate();
-			ModelGenerator.generate(entityName, attributes, "jpa");
-			ViewGenerator.generate(entityName, attributes);
-			SeleniumTestGenerator.generate(entityName, attributes);
-			ControllerGenerator.generate(entityName, attributes, "jpa");
+	/**
+	 * Removes an option and its value from the arguments.
+	 * 
+	 * @param arguments
+	 * @param option
+	 * @param defaultValue
+	 * @return the value of the option, or the default if it was not provided
+	 */
+	private static String takeOption(List<String> arguments, String option,
+			String defaultValue) {
+		int index = arguments.indexOf(option);
+		if (index == -1 || index == arguments.size() - 1) {
+			return defaultValue;
 		}
-		
-		if (command.equals("--scaffold-siena")
-				|| command.equals("--ss")) {
-			UtilsGenerator.generate();
-			ModelGenerator.generate(entityName, attributes, "siena");
-			ViewGenerator.generate(entityName, attributes);
-			SeleniumTestGenerator.generate(entityName, attributes);
-			ControllerGenerator.generate(entityName, attributes, "siena");
+
+		arguments.remove(index);
+		return arguments.remove(index);
+	}
+
+	/**
+	 * Removes all the entity options from the arguments.
+	 * 
+	 * @param arguments
+	 * @param options
+	 *            the map to add the options to
+	 * @return the options, keyed by option name without the leading dashes
+	 */
+	private static Map<String, String> takeEntityOptions(
+			List<String> arguments, Map<String, String> options) {
+		for (String option : ENTITY_OPTIONS) {
+			String value = takeOption(arguments, option, null);
+			if (value != null) {
+				options.put(option.substring(2), value);
+			}
+		}
+		for (String flag : ENTITY_FLAGS) {
+			if (takeFlag(arguments, flag)) {
+				options.put(flag.substring(2), "true");
+			}
 		}
+		return options;
+	}
+
+	/**
+	 * Removes a flag from the arguments.
+	 * 
+	 * @param arguments
+	 * @param flag
+	 * @return true if the flag was provided
+	 */
+	private static boolean takeFlag(List<String> arguments, String flag) {
+		return arguments.remove(flag);
+	}
 
+	private static File resolve(File root, String path) {
+		File file = new File(path);
+		if (!file.isAbsolute()) {
+			file = new File(root, path);
+		}
+		return file;
 	}
 
 	private static void printHelp() {
@@ -115,6 +547,30 @@ public class Generator {
 				.println("--scaffold-jpa [entity name] [attribute1:type1]*     Generates the JPA based model and associated CRUD code.");
 		System.out
 				.println("--model-jpa [entity name] [attribute1:type1]*         Generates the JPA based model. ");
+		System.out
+				.println("--batch [manifest file]                               Generates every entity listed in the manifest, one per line, in a single run.");
+		System.out
+				.println("--threads [count]                                     Number of entities to generate in parallel (default 1).");
+		System.out
+				.println("--force                                               Regenerates entities even if their inputs have not changed.");
+		System.out
+				.println("--timings                                             Prints the time taken to load, render and write each file.");
+		System.out
+				.println("--timings-json [file]                                 Writes the same timings as JSON, e.g. for CI.");
+		System.out
+				.println("--pagination [offset|keyset]                          How the generated grid pages through records (default offset).");
+		System.out
+				.println("--count [exact|cached[:seconds]|hasmore]              How the generated grid counts records (default exact).");
+		System.out
+				.println("--index [attribute1,attribute2]*                      Attributes to index, or name:type:indexed.");
+		System.out
+				.println("--http-cache                                          Answers unchanged pages and grids with 304 Not Modified.");
+		System.out
+				.println("--cache [read-only|read-write|nonstrict]              Caches the JPA model in the Hibernate second-level cache.");
+		System.out
+				.println("--bench                                               Generates a load test of the routes of the scaffold.");
+		System.out
+				.println("--instrument                                          Records the timings of the controller actions, served on /metrics.");
 		System.out.println();
 		System.out
 				.println("Note: --scaffold and --model are shortcuts to generate JPA");
@@ -0,0 +1,136 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import play.Play;
+import play.modules.scalagen.util.Timings;
+
+/**
+ * <p>
+ * A long running generator process. It initialises Play once and then serves
+ * generation requests over a socket bound to the loopback interface, which
+ * saves the JVM and Play start up time on every command.
+ * </p>
+ * <p>
+ * The protocol is line based (UTF-8). A client sends the application path
+ * followed by one argument per line and an empty line. The daemon replies
+ * with the generator output followed by a status line,
+ * <code>~scalagen:done &lt;0|1&gt;</code>, or with
+ * <code>~scalagen:refused</code> if the request is for a different
+ * application, in which case the client is expected to run the generator
+ * itself.
+ * </p>
+ */
+public class GeneratorDaemon {
+
+	public static final int DEFAULT_PORT = 7879;
+
+	private static final String DONE = "~scalagen:done ";
+	private static final String REFUSED = "~scalagen:refused";
+	private static final String STOP = "--stop-daemon";
+
+	public static void main(String[] args) throws IOException {
+		File root = new File(System.getProperty("application.path"));
+		long started = System.nanoTime();
+		Play.init(root, System.getProperty("play.id", ""));
+		Timings.initialised(System.nanoTime() - started);
+
+		int port = Integer.getInteger("scalagen.daemon.port", DEFAULT_PORT);
+		ServerSocket server = new ServerSocket(port, 50,
+				InetAddress.getByName("127.0.0.1"));
+
+		System.out.println("~ scalagen daemon listening on 127.0.0.1:" + port
+				+ " for " + root.getCanonicalPath());
+
+		try {
+			boolean running = true;
+			while (running) {
+				Socket socket = server.accept();
+				try {
+					running = serve(socket, root.getCanonicalPath());
+				} catch (IOException e) {
+					System.out.println("~ Request failed: " + e.getMessage());
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Serves a single request. Requests are served one at a time since the
+	 * generator writes its progress to the standard output.
+	 * 
+	 * @param socket
+	 * @param applicationPath
+	 * @return false if the daemon was asked to stop
+	 * @throws IOException
+	 */
+	private static boolean serve(Socket socket, String applicationPath)
+			throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				socket.getInputStream(), "UTF-8"));
+		PrintStream out = new PrintStream(socket.getOutputStream(), true,
+				"UTF-8");
+
+		String path = in.readLine();
+		List<String> args = new ArrayList<String>();
+		String line;
+		while ((line = in.readLine()) != null && line.length() != 0) {
+			args.add(line);
+		}
+
+		if (path == null
+				|| !new File(path).getCanonicalPath().equals(applicationPath)) {
+			out.println(REFUSED);
+			return true;
+		}
+
+		if (args.size() == 1 && STOP.equals(args.get(0))) {
+			out.println("~ scalagen daemon stopped");
+			out.println(DONE + 0);
+			return false;
+		}
+
+		PrintStream console = System.out;
+		int status = 0;
+		System.setOut(out);
+		try {
+			Generator.run(args.toArray(new String[args.size()]));
+		} catch (Throwable t) {
+			t.printStackTrace(out);
+			status = 1;
+		} finally {
+			System.setOut(console);
+		}
+
+		out.println(DONE + status);
+		return true;
+	}
+}
@@ -15,29 +15,33 @@
  */
 package play.modules.scalagen;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Maintains a registry of all supported data types.
+ * Maintains a registry of all supported data types. The registry may be read
+ * and extended concurrently while entities are generated in parallel.
  * 
  * @author Aishwarya Singhal
  */
 public class TypeRegistry {
 
-	private static Map<String, Entry> registry = new HashMap<String, Entry>();
+	private static Map<String, Entry> registry = new ConcurrentHashMap<String, Entry>();
 
 	static {
 		registry.put("string", new Entry("String"));
 		registry.put("date", new Entry("Date", "new Date", "new Date"));
-		registry.put("int", new Entry("Int", "0", "1"));
-		registry.put("long", new Entry("Long", "0", "1"));
-		registry.put("boolean", new Entry("Boolean", "false", "false"));
-		registry.put("double", new Entry("Double", "0.0", "10.0"));
-		registry.put("float", new Entry("Float", "0.0", "10.0"));
-		registry.put("byte", new Entry("Byte", "0", "1"));
-		registry.put("char", new Entry("Char", "''", "'a'"));
-		registry.put("short", new Entry("Short", "0", "1"));
+		registry.put("int", new Entry("Int", "0", "1", "int"));
+		registry.put("long", new Entry("Long", "0", "1", "long"));
+		registry.put("boolean", new Entry("Boolean", "false", "false",
+				"boolean"));
+		registry.put("double", new Entry("Double", "0.0", "10.0",
+				"double"));
+		registry.put("float", new Entry("Float", "0.0", "10.0",
+				"float"));
+		registry.put("byte", new Entry("Byte", "0", "1", "byte"));
+		registry.put("char", new Entry("Char", "''", "'a'", "char"));
+		registry.put("short", new Entry("Short", "0", "1", "short"));
 		registry.put("bigdecimal", new Entry("BigDecimal", "BigDecimal(0)",
 				"BigDecimal(1)"));
 		registry.put("bigint", new Entry("BigInt", "BigInt(0)", "BigInt(1)"));
@@ -98,6 +102,30 @@ public class TypeRegistry {
 		return null;
 	}
 
+	/**
+	 * Gets the JVM primitive a data type compiles to, e.g. int for Int.
+	 * Generated code can read and write values of such types without boxing
+	 * them, as long as it goes through methods declared for the primitive.
+	 * 
+	 * @param type
+	 * @return the name of the primitive, null if values of the type are
+	 *         objects
+	 */
+	public static String getPrimitive(String type) {
+		Entry entry = registry.get(type.toLowerCase());
+		return entry != null ? entry.primitive : null;
+	}
+
+	/**
+	 * Checks if a data type compiles to a JVM primitive.
+	 * 
+	 * @param type
+	 * @return true if it does
+	 */
+	public static boolean isPrimitive(String type) {
+		return getPrimitive(type) != null;
+	}
+
 	/**
 	 * Registers an additional data type on the fly.
 	 * 
@@ -127,11 +155,19 @@ public class TypeRegistry {
 		private String defaultValue;
 		private String testDataValue;
 		private String typeName;
+		/** the JVM primitive of the type, null if it is not one */
+		private String primitive;
 
-		private Entry(String typeName, String defaultValue, String testDataValue) {
+		private Entry(String typeName, String defaultValue,
+				String testDataValue, String primitive) {
 			this.typeName = typeName;
 			this.defaultValue = defaultValue;
 			this.testDataValue = testDataValue;
+			this.primitive = primitive;
+		}
+
+		private Entry(String typeName, String defaultValue, String testDataValue) {
+			this(typeName, defaultValue, testDataValue, null);
 		}
 
 		private Entry(String typeName) {
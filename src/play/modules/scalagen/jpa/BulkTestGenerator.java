@@ -0,0 +1,97 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.jpa;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import play.modules.scalagen.TypeRegistry;
+import play.modules.scalagen.util.CompiledTemplate;
+import play.modules.scalagen.util.TemplatesHelper;
+
+/**
+ * <p>
+ * Generates a functional test of the bulk update of an entity, which creates
+ * a record, updates one of its text attributes and reads the record back to
+ * check that the update was saved and left the other attributes alone.
+ * </p>
+ */
+public class BulkTestGenerator {
+
+	/**
+	 * 
+	 * @param entityName
+	 * @param attributes
+	 */
+	public static void generate(String entityName,
+			Map<String, String> attributes) {
+		String entityVarName = Character.toLowerCase(entityName.charAt(0))
+				+ entityName.substring(1);
+
+		String updated = null;
+		StringBuilder jsonData = new StringBuilder();
+		StringBuilder keptAssertions = new StringBuilder();
+
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			String varName = attribute.getKey();
+			String varType = TypeRegistry.getTypeName(attribute.getValue());
+
+			// related records may not exist, so relationships are left empty
+			if (varName.toLowerCase().equals("id")
+					|| !TypeRegistry.isRegistered(varType)) {
+				continue;
+			}
+
+			if (jsonData.length() != 0) {
+				jsonData.append(", ");
+			}
+			jsonData.append("\\\"").append(varName).append("\\\": \\\"")
+					.append(LoadTestGenerator.getPostedValue(varType))
+					.append("\\\"");
+
+			if (updated == null && "String".equals(varType)) {
+				updated = varName;
+			} else if (!"Date".equals(varType)
+					&& !Calendar.class.getName().equals(varType)) {
+				if (keptAssertions.length() != 0) {
+					keptAssertions.append("\n    ");
+				}
+				keptAssertions.append("(").append(entityVarName).append(".")
+						.append(varName).append(") should be(")
+						.append(TypeRegistry.getTestDataValue(varType))
+						.append(")");
+			}
+		}
+
+		if (updated == null) {
+			System.out.println("* " + entityName
+					+ " has no text attribute to update, skipping its bulk test.");
+			return;
+		}
+
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
+		values.put("JsonData", jsonData);
+		values.put("UpdatedAttribute", updated);
+		values.put("KeptAssertions", keptAssertions);
+
+		CompiledTemplate template = TemplatesHelper.compile("jpa/bulkTest");
+		TemplatesHelper.flush("test", "tests", entityName + "BulkTests.scala",
+				template.render(values));
+	}
+}
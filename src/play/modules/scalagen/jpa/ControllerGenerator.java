@@ -15,9 +15,13 @@
  */
 package play.modules.scalagen.jpa;
 
+import java.util.Calendar;
+import java.util.HashMap;
 import java.util.Map;
 
+import play.modules.scalagen.EntitySpec;
 import play.modules.scalagen.TypeRegistry;
+import play.modules.scalagen.util.CompiledTemplate;
 import play.modules.scalagen.util.TemplatesHelper;
 
 /**
@@ -32,94 +36,495 @@ import play.modules.scalagen.util.TemplatesHelper;
  */
 public class ControllerGenerator {
 
-	private static final String PARAM_TEMPLATE = "params.get(\"${attributeName}\")";
+	/**
+	 * Scala expressions parsing the key of a page cursor or a searched value
+	 * (<code>value</code>) to the type of a column.
+	 */
+	private static final Map<String, String> VALUE_PARSERS = new HashMap<String, String>();
+
+	static {
+		VALUE_PARSERS.put("String", "value");
+		VALUE_PARSERS.put("Int", "java.lang.Integer.valueOf(value)");
+		VALUE_PARSERS.put("Long", "java.lang.Long.valueOf(value)");
+		VALUE_PARSERS.put("Short", "java.lang.Short.valueOf(value)");
+		VALUE_PARSERS.put("Byte", "java.lang.Byte.valueOf(value)");
+		VALUE_PARSERS.put("Double", "java.lang.Double.valueOf(value)");
+		VALUE_PARSERS.put("Float", "java.lang.Float.valueOf(value)");
+		VALUE_PARSERS.put("Boolean", "java.lang.Boolean.valueOf(value)");
+		VALUE_PARSERS.put("Char",
+				"if (value.length != 0) java.lang.Character.valueOf(value.charAt(0)) else null");
+		VALUE_PARSERS.put("BigDecimal", "BigDecimal(value)");
+		VALUE_PARSERS.put("BigInt", "BigInt(value)");
+		VALUE_PARSERS.put("Date", "DateConverter.convert(value)");
+		VALUE_PARSERS.put(Calendar.class.getName(),
+				"CalendarConverter.convert(value)");
+	}
 
-	private static final String ATTRIBUTE_TEMPLATE = "${EntityNameVar}.${attributeName} = if (!isEmptyString(${param})) ${param}.to${varTypeName} else ${defaultValue}";
+	/**
+	 * Interceptors timing the actions of an instrumented controller. Play
+	 * runs @Finally interceptors once the result has been applied to the
+	 * response.
+	 */
+	private static final String TIMING_INTERCEPTORS = "\n"
+			+ "  @Before\n"
+			+ "  def startTiming() {\n"
+			+ "    request.args.put(\"started\", java.lang.Long.valueOf(System.nanoTime))\n"
+			+ "  }\n\n"
+			+ "  @Finally\n"
+			+ "  def stopTiming() {\n"
+			+ "    for (timer <- actionTimes.get(request.actionMethod); started <- Option(request.args.get(\"started\"))) {\n"
+			+ "      timer.stop(started.asInstanceOf[java.lang.Long].longValue)\n"
+			+ "    }\n"
+			+ "  }\n";
 
-	private static final String ATTRIBUTE_RELATIONSHIP_TEMPLATE = "${EntityNameVar}.${attributeName} = if (!isEmptyString(${param})) ${modelName}.findById(${param}.toLong).getOrElse(null) else null";
+	/** seconds for which cached record counts are used by default */
+	private static final String DEFAULT_COUNT_TTL = "60";
+
+	/** the actions of a controller, timed when it is instrumented */
+	private static final String[] ACTIONS = { "index", "show", "newValue",
+			"edit", "create", "update", "delete", "bulkCreate", "bulkUpdate",
+			"bulkDelete", "export", "grid" };
 
 	/**
 	 * 
 	 * @param entityName
 	 * @param attributes
+	 * @param scheme
+	 * @param options
 	 */
 	public static void generate(String entityName,
-			Map<String, String> attributes, String scheme) {
-		String template = TemplatesHelper.getTemplate(scheme + "/controller");
+			Map<String, String> attributes, String scheme,
+			Map<String, String> options) {
+		CompiledTemplate template = TemplatesHelper.compile(scheme
+				+ "/controller");
+		boolean keyset = isKeysetPagination(options);
+		CompiledTemplate gridTemplate = TemplatesHelper.compile(scheme
+				+ (keyset ? "/grid_action_keyset" : "/grid_action"));
 
 		String entityVarName = Character.toLowerCase(entityName.charAt(0))
 				+ entityName.substring(1);
 
-		template = template.replace("${EntityName}", entityName);
-		template = template.replace("${EntityNameVar}", entityVarName);
-
-		template = buildAttributes(template, entityVarName, attributes);
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
+		values.put("GridCells", buildGridCells(entityVarName, attributes));
+		values.put("GridCellNames", buildGridCellNames(attributes));
+		values.put("GridRowKeys", buildGridRowKeys(entityName, entityVarName,
+				attributes));
+		putFetchJoins(values, entityName, entityVarName, attributes);
+		putRecordCount(values, entityName, scheme, keyset, options);
+		putHttpCache(values, entityName, options);
+		putInstrumentation(values, entityName, entityVarName, options);
+		values.put("GridAction", gridTemplate.render(values));
 
 		TemplatesHelper.flush("app", "controllers", entityName
-				+ "sController.scala", template);
+				+ "sController.scala", template.render(values));
+		UtilsGenerator.generateControllerHelpers();
 		buildRoutes(entityName, entityVarName);
 	}
 
 	private static void buildRoutes(String entityName, String entityVarName) {
-		String template = TemplatesHelper.getTemplate("jpa/routes");
-		template = template.replace("${EntityName}", entityName);
-		template = template.replace("${EntityNameVar}", entityVarName);
-
-		System.out.println();
-		System.out
-				.println("Please add the following entries to the routes file");
-		System.out.println(template);
-		System.out.println();
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
+		String template = TemplatesHelper.compile("jpa/routes").render(values);
+
+		// print in one go so that the entries are not interleaved with the
+		// output of entities generated in parallel.
+		StringBuilder message = new StringBuilder();
+		message.append("\n");
+		message.append("Please add the following entries to the routes file\n");
+		message.append(template).append("\n");
+		System.out.println(message);
 	}
 
 	/**
+	 * Builds the cells of a grid row, one per grid column. Integral, boolean
+	 * and double columns are written as JSON values straight from their
+	 * primitive, other columns as text.
 	 * 
-	 * @param template
 	 * @param entityVarName
 	 * @param attributes
-	 * @return
+	 * @return the cell expressions
 	 */
-	private static String buildAttributes(String template,
-			String entityVarName, Map<String, String> attributes) {
-		StringBuilder varDefinitions = new StringBuilder();
+	private static String buildGridCells(String entityVarName,
+			Map<String, String> attributes) {
+		StringBuilder cells = new StringBuilder();
+
+		for (String varName : ViewGenerator.getGridColumns(attributes)) {
+			if (cells.length() != 0) {
+				cells.append("\n      ");
+			}
+
+			String field = entityVarName + "." + varName;
+			String primitive = varName.toLowerCase().equals("id") ? null
+					: TypeRegistry.getPrimitive(attributes.get(varName));
+
+			if ("int".equals(primitive) || "long".equals(primitive)
+					|| "short".equals(primitive) || "byte".equals(primitive)) {
+				cells.append("out.value(").append(field).append(".toLong)");
+			} else if ("boolean".equals(primitive)) {
+				cells.append("out.value(").append(field).append(")");
+			} else if ("double".equals(primitive)) {
+				cells.append("JQGridHelper.cell(out, ").append(field)
+						.append(")");
+			} else {
+				// floats would be widened to doubles with extra digits
+				cells.append("out.value(JQGridHelper.cell(").append(field)
+						.append("))");
+			}
+		}
+
+		return cells.toString();
+	}
+
+	/**
+	 * Builds the names of the cells of a grid row, quoted and in the order of
+	 * the grid columns.
+	 * 
+	 * @param attributes
+	 * @return the names
+	 */
+	private static String buildGridCellNames(Map<String, String> attributes) {
+		StringBuilder names = new StringBuilder();
+
+		for (String varName : ViewGenerator.getGridColumns(attributes)) {
+			if (names.length() != 0) {
+				names.append(", ");
+			}
+			names.append("\"").append(varName).append("\"");
+		}
+
+		return names.toString();
+	}
+
+	/**
+	 * Checks if the grid pages through the rows by seeking from the first or
+	 * last row shown rather than by offset.
+	 * 
+	 * @param options
+	 * @return true for keyset pagination
+	 */
+	static boolean isKeysetPagination(Map<String, String> options) {
+		return "keyset".equals(options.get(EntitySpec.PAGINATION));
+	}
+
+	/**
+	 * Fills in the queries of the index and grid actions. The related
+	 * entities of a JPA model are fetched along with it in the same query, so
+	 * that showing a page takes a single query rather than one more per row.
+	 * 
+	 * @param values
+	 * @param entityName
+	 * @param entityVarName
+	 * @param attributes
+	 */
+	private static void putFetchJoins(Map<String, String> values,
+			String entityName, String entityVarName,
+			Map<String, String> attributes) {
+		StringBuilder from = new StringBuilder();
 
 		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-			String varName = attribute.getKey();
-			String varType = attribute.getValue();
+			// cached models are better looked up in the second-level cache
+			if (!TypeRegistry.isRegistered(attribute.getValue())
+					&& !ModelGenerator.isCached(attribute.getValue())) {
+				from.append("left join fetch ").append(entityVarName)
+						.append(".").append(attribute.getKey()).append(" ");
+			}
+		}
 
-			if (varName.toLowerCase().equals("id")) {
-				continue;
+		if (from.length() == 0) {
+			values.put("ExportFrom", "from " + entityName + " "
+					+ entityVarName + " ");
+			values.put("FetchFrom", "");
+			values.put("GridQuery", "query.condition");
+			values.put("SeekQuery", "");
+			return;
+		}
+
+		// unqualified attributes in the conditions refer to the entity
+		from.insert(0, "select " + entityVarName + " from " + entityName + " "
+				+ entityVarName + " ");
+		values.put("FetchFrom", from.toString());
+		values.put("ExportFrom", from.toString());
+		values.put("GridQuery", "\"" + from + "\" + query.where");
+		values.put("SeekQuery", "\"" + from + "where \" + ");
+	}
+
+	/**
+	 * Checks if the actions are to record their timings in the metrics.
+	 * 
+	 * @param options
+	 * @return true if they are
+	 */
+	static boolean isInstrumented(Map<String, String> options) {
+		return options.containsKey(EntitySpec.INSTRUMENT);
+	}
+
+	/**
+	 * Fills in the timers of the actions and the grid, or leaves them out if
+	 * the controller is not instrumented. Each action is timed by a @Before
+	 * and a @Finally interceptor, from before it runs until its result has
+	 * been written to the response, so that rendering and streaming the
+	 * result, not modified responses and exceptions are all counted. The grid
+	 * also records the time taken to fetch and to count the rows and the
+	 * number of rows fetched.
+	 * 
+	 * @param values
+	 * @param entityName
+	 * @param entityVarName
+	 * @param options
+	 */
+	private static void putInstrumentation(Map<String, String> values,
+			String entityName, String entityVarName,
+			Map<String, String> options) {
+		boolean instrumented = isInstrumented(options);
+		String prefix = entityVarName + "s_";
+
+		if (!instrumented) {
+			values.put("ActionMetrics", "");
+			values.put("GridStarted", "");
+			values.put("GridFetched", "");
+			values.put("GridCounted", "");
+			return;
+		}
+
+		StringBuilder metrics = new StringBuilder();
+		metrics.append("  private val actionTimes = scala.collection.immutable.Map(");
+		for (int i = 0; i < ACTIONS.length; i++) {
+			metrics.append(i == 0 ? "\n" : ",\n");
+			metrics.append("    \"").append(ACTIONS[i]).append(
+					"\" -> Metrics.timer(\"").append(prefix).append(
+					ACTIONS[i]).append("\")");
+		}
+		metrics.append(")\n");
+		metrics.append("  private val gridFetchTime = Metrics.timer(\"")
+				.append(prefix).append("grid_fetch\")\n");
+		metrics.append("  private val gridCountTime = Metrics.timer(\"")
+				.append(prefix).append("grid_count\")\n");
+		metrics.append("  private val gridRows = Metrics.histogram(\"")
+				.append(prefix).append("grid_rows\")\n");
+
+		metrics.append(TIMING_INTERCEPTORS);
+
+		values.put("ActionMetrics", "\n" + metrics);
+		values.put("GridStarted", "\n    val started = System.nanoTime");
+		values.put("GridFetched", "\n    val fetched = System.nanoTime\n"
+				+ "    gridFetchTime.record(fetched - started)\n"
+				+ "    gridRows.record(all" + entityName + "s.size)");
+		values.put("GridCounted", "\n    gridCountTime.stop(fetched)");
+
+		generateMetrics();
+	}
+
+	/**
+	 * Generates the metrics shared by the instrumented controllers, and the
+	 * controller that serves them.
+	 */
+	private static synchronized void generateMetrics() {
+		if (TemplatesHelper.exists("app", "controllers",
+				"MetricsController.scala")) {
+			System.out
+					.println("* app/controllers/MetricsController.scala already exists. Skipping.");
+			return;
+		}
+
+		TemplatesHelper.flush("app", "utils", "Metrics.scala", TemplatesHelper
+				.getTemplate("utils/Metrics"));
+		TemplatesHelper.flush("app", "controllers", "MetricsController.scala",
+				TemplatesHelper.getTemplate("utils/MetricsController"));
+
+		StringBuilder message = new StringBuilder();
+		message.append("\n");
+		message.append("Please add the following entry to the routes file\n");
+		message.append("GET     /metrics                                 MetricsController.index\n");
+		System.out.println(message);
+	}
+
+	/**
+	 * Fills in the conditional GET support of the index, show and grid
+	 * actions, if asked for. The change stamp of the entity is moved on by
+	 * the actions that change its records.
+	 * 
+	 * @param values
+	 * @param entityName
+	 * @param options
+	 */
+	private static void putHttpCache(Map<String, String> values,
+			String entityName, Map<String, String> options) {
+		if (!isHttpCached(options)) {
+			values.put("NotModified", "");
+			return;
+		}
+
+		values.put("NotModified", "HttpCache.notModified(\"" + entityName
+				+ "\").getOrElse ");
+		values.put("RecordsChanged", values.get("RecordsChanged")
+				+ "\n        HttpCache.changed(\"" + entityName + "\")");
+		UtilsGenerator.generateHttpCache();
+	}
+
+	/**
+	 * Checks if the generated actions support conditional GETs.
+	 * 
+	 * @param options
+	 * @return true if they do
+	 */
+	static boolean isHttpCached(Map<String, String> options) {
+		return "true".equals(options.get(EntitySpec.HTTP_CACHE));
+	}
+
+	/**
+	 * Fills in how the grid action counts the records, as per the count
+	 * option:
+	 * <ul>
+	 * <li>exact : counts the records on every request.
+	 * <li>cached[:seconds] : counts the records once per filter for the given
+	 * number of seconds (default 60), or until the records change.
+	 * <li>hasmore : fetches a row more than the grid shows and does not count
+	 * at all, the grid then only knows if there is a next page.
+	 * </ul>
+	 * 
+	 * @param values
+	 * @param entityName
+	 * @param scheme
+	 * @param keyset
+	 * @param options
+	 */
+	private static void putRecordCount(Map<String, String> values,
+			String entityName, String scheme, boolean keyset,
+			Map<String, String> options) {
+		String strategy = options.get(EntitySpec.COUNT);
+		String ttl = DEFAULT_COUNT_TTL;
+		if (strategy != null && strategy.startsWith("cached:")) {
+			ttl = strategy.substring("cached:".length());
+			strategy = "cached";
+			try {
+				Integer.parseInt(ttl);
+			} catch (NumberFormatException e) {
+				System.out.println("* Invalid count cache time " + ttl
+						+ ", using " + DEFAULT_COUNT_TTL + " seconds.");
+				ttl = DEFAULT_COUNT_TTL;
 			}
+		}
 
-			varType = TypeRegistry.getTypeName(varType);
-			String defaultValue = TypeRegistry.getDefaultValue(varType);
+		// the siena grid does not filter, so neither does its count
+		String count = scheme.equals("jpa") ? "if (query.condition != \"\") "
+				+ entityName + ".count(query.condition, query.params: _*) else "
+				+ entityName + ".count" : entityName + ".count";
 
-			// build the attribute definition
-			String var = null;
-			String param = PARAM_TEMPLATE.replace("${attributeName}", varName);
+		values.put("FetchRows", "rows");
+		values.put("PageRows", "");
+		values.put("RecordsChanged", "");
 
-			if (!TypeRegistry.isRegistered(varType)) {
-				// unknown type, is it a custom data type/ another model ?
-				var = ATTRIBUTE_RELATIONSHIP_TEMPLATE.replace(
-						"${EntityNameVar}", entityVarName);
-				var = var.replace("${modelName}", varType);
-			} else if (TypeRegistry.isInternalDataType(varType)) {
-				var = ATTRIBUTE_TEMPLATE;
-				var = var.replace("${EntityNameVar}", entityVarName);
-				var = var.replace("${varTypeName}", varType);
+		if ("hasmore".equals(strategy)) {
+			values.put("FetchRows", "rows + 1");
+			values.put("PageRows", ".take(rows)");
+			values.put("RecordCount", "RecordCounts.estimate(page, rows, all"
+					+ entityName + "s.size"
+					+ (keyset ? ", cursor != null && !forward)" : ")"));
+			UtilsGenerator.generateRecordCounts();
+		} else if ("cached".equals(strategy)) {
+			values.put("RecordCount", "RecordCounts.get(\"" + entityName
+					+ "\", " + (scheme.equals("jpa") ? "query.toString" : "\"\"")
+					+ ", " + ttl + ") { " + count + " }.toInt");
+			values.put("RecordsChanged", "\n        RecordCounts.changed(\""
+					+ entityName + "\")");
+			UtilsGenerator.generateRecordCounts();
+		} else {
+			if (strategy != null && !strategy.equals("exact")) {
+				System.out.println("* Unknown count " + strategy
+						+ ", counting all records instead.");
 			}
+			values.put("RecordCount", scheme.equals("jpa") ? "(" + count
+					+ ").toInt" : count + ".toInt");
+		}
+	}
+
+	/**
+	 * Builds the columns of the grid row writer, which are the only ones the
+	 * grid can be sorted and searched on, and the methods that turn the value
+	 * of a column into a page cursor or search parameter and back. Only
+	 * columns of the internal data types are converted, and only the id and
+	 * primitive columns, which can not be null, are used as page cursors; the
+	 * grid falls back to offsets for the rest. Text columns are listed as the
+	 * only ones LIKE searches apply to, and relationships as searched on the
+	 * related id.
+	 * 
+	 * @param entityName
+	 * @param entityVarName
+	 * @param attributes
+	 * @return the method definitions
+	 */
+	private static String buildGridRowKeys(String entityName,
+			String entityVarName, Map<String, String> attributes) {
+		StringBuilder columns = new StringBuilder();
+		StringBuilder textColumns = new StringBuilder();
+		StringBuilder relationships = new StringBuilder();
+		StringBuilder keyColumns = new StringBuilder("\"id\"");
+		StringBuilder keys = new StringBuilder();
+		StringBuilder parsers = new StringBuilder();
+
+		columns.append("\n    override val columns = scala.collection.immutable.Set(\"id\"");
+		keys.append("    override def key(").append(entityVarName)
+				.append(": ").append(entityName)
+				.append(", column: String): String = column match {\n");
+		parsers.append("    override def parseKey(column: String, value: String): AnyRef = column match {\n");
 
-			if (null != var) {
-				var = var.replace("${attributeName}", varName);
-				var = var.replace("${param}", param);
-				var = var.replace("${defaultValue}", defaultValue);
+		keys.append("      case \"id\" => ").append(entityVarName)
+				.append(".id.toString\n");
+		parsers.append("      case \"id\" => java.lang.Long.valueOf(value)\n");
 
-				varDefinitions.append(var).append("\n        ");
+		for (String varName : ViewGenerator.getGridColumns(attributes)) {
+			if (varName.toLowerCase().equals("id")) {
+				continue;
+			}
+			columns.append(", \"").append(varName).append("\"");
+
+			String varType = TypeRegistry.getTypeName(attributes.get(varName));
+			if (!TypeRegistry.isRegistered(varType)) {
+				appendColumn(relationships, varName);
+			} else if (varType.equals("String")) {
+				appendColumn(textColumns, varName);
+			}
+			String parser = VALUE_PARSERS.get(varType);
+			if (parser == null) {
+				continue;
+			}
+			parsers.append("      case \"").append(varName).append("\" => ")
+					.append(parser).append("\n");
+
+			// primitives are never null, so no row is left out by seeking
+			if (TypeRegistry.isPrimitive(varType)) {
+				appendColumn(keyColumns, varName);
+				keys.append("      case \"").append(varName).append("\" => ")
+						.append(entityVarName).append(".").append(varName)
+						.append(".toString\n");
 			}
 		}
 
-		template = template.replace("${formData}", varDefinitions.toString());
+		columns.append(")\n");
+		columns.append("    override val keyColumns = scala.collection.immutable.Set(")
+				.append(keyColumns).append(")\n");
+		if (textColumns.length() != 0) {
+			columns.append("    override val textColumns = scala.collection.immutable.Set(")
+					.append(textColumns).append(")\n");
+		}
+		if (relationships.length() != 0) {
+			columns.append("    override val relationships = scala.collection.immutable.Set(")
+					.append(relationships).append(")\n");
+		}
+		columns.append("\n");
+		keys.append("      case _ => null\n    }\n\n");
+		parsers.append("      case _ => null\n    }\n");
 
-		return template;
+		return columns.append(keys).append(parsers).toString();
+	}
+
+	private static void appendColumn(StringBuilder columns, String varName) {
+		if (columns.length() != 0) {
+			columns.append(", ");
+		}
+		columns.append("\"").append(varName).append("\"");
 	}
 }
@@ -0,0 +1,130 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.jpa;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import play.modules.scalagen.EntitySpec;
+import play.modules.scalagen.TypeRegistry;
+import play.modules.scalagen.util.CompiledTemplate;
+import play.modules.scalagen.util.TemplatesHelper;
+
+/**
+ * <p>
+ * Generates a load test of the routes of an entity, which measures the
+ * throughput and latency of its grid, show, create and update routes when run
+ * with "play test". The tests of all entities share a harness, generated
+ * along with the first of them.
+ * </p>
+ */
+public class LoadTestGenerator {
+
+	/** posted value of dates, as the date input posts them */
+	private static final String DATE_VALUE = "01/01/2026";
+
+	/**
+	 * Checks if load tests are to be generated.
+	 *
+	 * @param options
+	 * @return true if they are
+	 */
+	public static boolean isBenchmarked(Map<String, String> options) {
+		return options.containsKey(EntitySpec.BENCH);
+	}
+
+	/**
+	 *
+	 * @param entityName
+	 * @param attributes
+	 */
+	public static void generate(String entityName,
+			Map<String, String> attributes) {
+		CompiledTemplate template = TemplatesHelper.compile("jpa/loadTest");
+
+		String entityVarName = Character.toLowerCase(entityName.charAt(0))
+				+ entityName.substring(1);
+
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
+
+		StringBuilder formData = new StringBuilder();
+		StringBuilder jsonData = new StringBuilder();
+
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			String varName = attribute.getKey();
+			String varType = TypeRegistry.getTypeName(attribute.getValue());
+
+			// related records may not exist, so relationships are left empty
+			if (varName.toLowerCase().equals("id")
+					|| !TypeRegistry.isRegistered(varType)) {
+				continue;
+			}
+
+			String value = getPostedValue(varType);
+
+			if (formData.length() != 0) {
+				formData.append(", ");
+				jsonData.append(", ");
+			}
+			formData.append("\"").append(varName).append("\" -> \"")
+					.append(value).append("\"");
+			jsonData.append("\\\"").append(varName).append("\\\": \\\"")
+					.append(value).append("\\\"");
+		}
+		values.put("FormData", formData);
+		values.put("JsonData", jsonData);
+
+		TemplatesHelper.flush("test", "bench", entityName + "LoadTest.scala",
+				template.render(values));
+
+		generateHarness();
+	}
+
+	/**
+	 * Gets a value of a type as it would be posted by the form.
+	 *
+	 * @param varType
+	 * @return the value
+	 */
+	static String getPostedValue(String varType) {
+		if ("Date".equals(varType)
+				|| Calendar.class.getName().equals(varType)) {
+			return DATE_VALUE;
+		}
+
+		String value = TypeRegistry.getTestDataValue(varType);
+		if (value.startsWith("BigDecimal(") || value.startsWith("BigInt(")) {
+			return value.substring(value.indexOf('(') + 1, value.length() - 1);
+		}
+		return value.replace("\"", "").replace("'", "");
+	}
+
+	/**
+	 * Generates the harness shared by the load tests.
+	 */
+	private static synchronized void generateHarness() {
+		if (!TemplatesHelper.exists("test", "bench", "LoadTest.scala")) {
+			String template = TemplatesHelper.getTemplate("utils/LoadTest");
+			TemplatesHelper.flush("test", "bench", "LoadTest.scala", template);
+		} else {
+			System.out
+					.println("* test/bench/LoadTest.scala already exists. Skipping.");
+		}
+	}
+}
@@ -15,11 +15,21 @@
  */
 package play.modules.scalagen.jpa;
 
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.jvnet.inflector.Noun;
 
+import play.modules.scalagen.EntitySpec;
 import play.modules.scalagen.TypeRegistry;
+import play.modules.scalagen.util.CompiledTemplate;
 import play.modules.scalagen.util.TemplatesHelper;
 
 /**
@@ -31,29 +41,77 @@ import play.modules.scalagen.util.TemplatesHelper;
  * @author Aishwarya Singhal
  */
 public class ModelGenerator {
-	private static final String ATTRIBUTE_TEMPLATE = "var ${attributeName}: ${attributeType} = ${attributeDefaultValue}";
-	private static final String DEPENDENCY_TEMPLATE = "var ${attributeName} = null";
+	private static final CompiledTemplate ATTRIBUTE_TEMPLATE = CompiledTemplate
+			.parse("var ${attributeName}: ${attributeType} = ${attributeDefaultValue}");
+	private static final CompiledTemplate DEPENDENCY_TEMPLATE = CompiledTemplate
+			.parse("var ${attributeName} = null");
+	private static final CompiledTemplate BIND_TEMPLATE = CompiledTemplate
+			.parse("if (posted(\"${attributeName}\")) ${EntityNameVar}.${attributeName} = ${converter}.bind(get(\"${attributeName}\"))");
+	/** dates may be posted as a whole or as separate day, month and year */
+	private static final CompiledTemplate BIND_DATE_TEMPLATE = CompiledTemplate
+			.parse("if (posted(\"${attributeName}\") || posted(\"${attributeName}_day\")) ${EntityNameVar}.${attributeName} = ${converter}.bind(get, \"${attributeName}\")");
+	private static final CompiledTemplate BIND_RELATIONSHIP_TEMPLATE = CompiledTemplate
+			.parse("if (posted(\"${attributeName}\")) ${EntityNameVar}.${attributeName} = if (!Converter.isEmpty(get(\"${attributeName}\"))) ${attributeType}.findById(get(\"${attributeName}\").toLong).getOrElse(null) else null");
+	/** refers to the related entity by id, without loading it */
+	private static final CompiledTemplate BIND_REFERENCE_TEMPLATE = CompiledTemplate
+			.parse("if (posted(\"${attributeName}\")) ${EntityNameVar}.${attributeName} = if (!Converter.isEmpty(get(\"${attributeName}\"))) JPA.em.getReference(classOf[${attributeType}], java.lang.Long.valueOf(get(\"${attributeName}\"))) else null");
+
+	private static final CompiledTemplate JPA_INDEX_TEMPLATE = CompiledTemplate
+			.parse("@org.hibernate.annotations.Index(name = \"${indexName}\")");
+	private static final CompiledTemplate SIENA_INDEX_TEMPLATE = CompiledTemplate
+			.parse("@Index(Array(\"${indexName}\"))");
+
+	/** Hibernate cache concurrency strategies, by option value */
+	private static final Map<String, String> CACHE_STRATEGIES = new HashMap<String, String>();
+
+	static {
+		CACHE_STRATEGIES.put("read-only", "READ_ONLY");
+		CACHE_STRATEGIES.put("read-write", "READ_WRITE");
+		CACHE_STRATEGIES.put("nonstrict", "NONSTRICT_READ_WRITE");
+	}
+
+	/**
+	 * models generated by the current run, and whether they are cached in the
+	 * second-level cache
+	 */
+	private static final Map<String, Boolean> runModels = Collections
+			.synchronizedMap(new HashMap<String, Boolean>());
+
+	/** types with a converter in the generated utils/HttpBinder.scala */
+	private static final Set<String> CONVERTIBLE_TYPES = new HashSet<String>(
+			Arrays.asList("String", "Int", "Long", "Boolean", "Double",
+					"Float", "Byte", "Char", "Short", "BigDecimal", "BigInt",
+					"Date", Calendar.class.getName()));
 
 	/**
 	 * 
 	 * @param entityName
 	 * @param attributes
+	 * @param scheme
+	 * @param options
 	 */
 	public static void generate(String entityName,
-			Map<String, String> attributes, String scheme) {
-		String template = TemplatesHelper.getTemplate(scheme + "/model");
+			Map<String, String> attributes, String scheme,
+			Map<String, String> options) {
+		CompiledTemplate template = TemplatesHelper.compile(scheme + "/model");
 
 		String entityVarName = Character.toLowerCase(entityName.charAt(0))
 				+ entityName.substring(1);
+		String tableName = getTableName(entityVarName);
+		Set<String> indexed = getIndexedAttributes(attributes, options);
 
-		template = template.replace("${EntityName}", entityName);
-		template = template.replace("${EntityNameVar}", entityVarName);
-		template = template
-				.replace("${TableName}", getTableName(entityVarName));
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
+		values.put("TableName", tableName);
 
-		template = buildAttributes(template, entityVarName, attributes, scheme);
+		buildAttributes(values, entityVarName, attributes, scheme, tableName,
+				indexed);
+		values.put("CacheAnnotations",
+				buildCacheAnnotations(entityName, scheme, options));
 
-		TemplatesHelper.flush("app", "models", entityName + ".scala", template);
+		TemplatesHelper.flush("app", "models", entityName + ".scala",
+				template.render(values));
 
 		generateTests(entityName, entityVarName, attributes, scheme);
 
@@ -64,7 +122,121 @@ public class ModelGenerator {
 		}
 	}
 
-	private static void generateQueryTrait() {
+	/**
+	 * Notes the models of the generation requests of the run, and which of
+	 * them are cached in the second-level cache.
+	 * 
+	 * @param specs
+	 */
+	public static void resetCachedModels(List<EntitySpec> specs) {
+		runModels.clear();
+		for (EntitySpec spec : specs) {
+			runModels.put(spec.getEntityName(), Boolean
+					.valueOf(CACHE_STRATEGIES.containsKey(spec.getOptions()
+							.get(EntitySpec.CACHE))));
+		}
+	}
+
+	/**
+	 * Checks if a model is cached in the second-level cache, as per its
+	 * generation request in this run or else as generated earlier.
+	 * 
+	 * @param modelName
+	 * @return true if it is cached
+	 */
+	public static boolean isCached(String modelName) {
+		Boolean cached = runModels.get(modelName);
+		if (cached != null) {
+			return cached.booleanValue();
+		}
+
+		String model = TemplatesHelper.read("app", "models", modelName
+				+ ".scala");
+		return model != null && model.indexOf("\n@Cacheable") != -1;
+	}
+
+	/**
+	 * Builds the second-level cache annotations of a JPA model, and prints the
+	 * configuration the cache needs.
+	 * 
+	 * @param entityName
+	 * @param scheme
+	 * @param options
+	 * @return the annotations
+	 */
+	private static String buildCacheAnnotations(String entityName,
+			String scheme, Map<String, String> options) {
+		String cache = options.get(EntitySpec.CACHE);
+		if (cache == null) {
+			return "";
+		}
+
+		String strategy = CACHE_STRATEGIES.get(cache);
+		if (strategy == null || !"jpa".equals(scheme)) {
+			System.out.println("* Can not cache " + entityName + " as "
+					+ cache + ". Skipping.");
+			return "";
+		}
+
+		// print in one go so that the entries are not interleaved with the
+		// output of entities generated in parallel.
+		StringBuilder message = new StringBuilder();
+		message.append("\n");
+		message.append("Please add the following entries to application.conf\n");
+		message.append("hibernate.cache.use_second_level_cache=true\n");
+		message.append("hibernate.cache.region.factory_class=net.sf.ehcache.hibernate.EhCacheRegionFactory\n");
+		message.append("\n");
+		message.append("and the following region to conf/ehcache.xml\n");
+		message.append("<cache name=\"models.").append(entityName).append(
+				"\" maxElementsInMemory=\"10000\" eternal=\"false\" timeToLiveSeconds=\"3600\" overflowToDisk=\"false\" />\n");
+		if (cache.equals("read-only")) {
+			message.append("\nNote: read-only records of ").append(entityName)
+					.append(" can be created and deleted, but not updated.\n");
+		}
+		System.out.println(message);
+
+		return "\n@Cacheable\n@org.hibernate.annotations.Cache(usage = org.hibernate.annotations.CacheConcurrencyStrategy."
+				+ strategy + ")";
+	}
+
+	/**
+	 * Gets the attributes to index, as listed in the index option.
+	 * 
+	 * @param attributes
+	 * @param options
+	 * @return the attribute names
+	 */
+	private static Set<String> getIndexedAttributes(
+			Map<String, String> attributes, Map<String, String> options) {
+		Set<String> indexed = new LinkedHashSet<String>();
+
+		String index = options.get(EntitySpec.INDEX);
+		if (index == null) {
+			return indexed;
+		}
+
+		for (String varName : index.split(",")) {
+			varName = varName.trim();
+			if (varName.length() == 0 || varName.toLowerCase().equals("id")) {
+				// the id is indexed anyway
+				continue;
+			}
+
+			if (attributes.containsKey(varName)) {
+				indexed.add(varName);
+			} else {
+				System.out.println("* Unknown attribute " + varName
+						+ ", not indexed.");
+			}
+		}
+		return indexed;
+	}
+
+	private static String getIndexName(String tableName, String varName) {
+		return (tableName + "_" + varName + "_idx").toLowerCase();
+	}
+
+	private static synchronized void generateQueryTrait() {
 		if (!TemplatesHelper.exists("app", "siena", "QueryOn.scala")) {
 			String template = TemplatesHelper.getTemplate("siena/QueryOn");
 			TemplatesHelper.flush("app", "siena", "QueryOn.scala", template);
@@ -80,7 +252,7 @@ public class ModelGenerator {
 	 * @param entityVarName
 	 * @return
 	 */
-	private static String getTableName(String entityVarName) {
+	static String getTableName(String entityVarName) {
 		StringBuilder sb = new StringBuilder();
 
 		for (int i = 0; i < entityVarName.length(); i++) {
@@ -113,21 +285,26 @@ public class ModelGenerator {
 
 	private static void generateTests(String entityName, String entityVarName,
 			Map<String, String> attributes, String scheme) {
-		String template = TemplatesHelper.getTemplate(scheme + "/modelTest");
+		CompiledTemplate template = TemplatesHelper.compile(scheme
+				+ "/modelTest");
 
-		template = template.replace("${EntityName}", entityName);
-		template = template.replace("${EntityNameVar}", entityVarName);
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
-		template = buildTestAttributes(template, entityName, attributes, scheme);
+		buildTestAttributes(values, entityName, attributes, scheme);
 
-		TemplatesHelper.flush("test", "tests", entityName + ".scala", template);
+		TemplatesHelper.flush("test", "tests", entityName + ".scala",
+				template.render(values));
 	}
 
-	private static String buildAttributes(String template,
-			String entityVarName, Map<String, String> attributes, String scheme) {
+	private static void buildAttributes(Map<String, String> values,
+			String entityVarName, Map<String, String> attributes,
+			String scheme, String tableName, Set<String> indexed) {
 		StringBuilder varDefinitions = new StringBuilder();
 		StringBuilder constructorParams = new StringBuilder();
 		StringBuilder entityAttributesAssignment = new StringBuilder();
+		StringBuilder bindAttributes = new StringBuilder();
 
 		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
 			String varName = attribute.getKey();
@@ -141,15 +318,24 @@ public class ModelGenerator {
 			varType = TypeRegistry.getTypeName(varType);
 
 			// build the attribute definition
-			String var = ATTRIBUTE_TEMPLATE
-					.replace("${attributeName}", varName);
-			var = var.replace("${attributeType}", varType);
-			var = var.replace("${attributeDefaultValue}", defaultVal);
+			Map<String, String> attributeValues = new HashMap<String, String>();
+			attributeValues.put("attributeName", varName);
+			attributeValues.put("attributeType", varType);
+			attributeValues.put("attributeDefaultValue", defaultVal);
+			String var = ATTRIBUTE_TEMPLATE.render(attributeValues);
 
 			if (!TypeRegistry.isRegistered(varType) && "jpa".equals(scheme)) {
 				var = "@ManyToOne\n  " + var;
 			}
 
+			if (indexed.contains(varName)) {
+				Map<String, String> indexValues = new HashMap<String, String>();
+				indexValues.put("indexName", getIndexName(tableName, varName));
+				var = ("jpa".equals(scheme) ? JPA_INDEX_TEMPLATE
+						: SIENA_INDEX_TEMPLATE).render(indexValues)
+						+ "\n  " + var;
+			}
+
 			varDefinitions.append(var).append("\n  ");
 
 			// build the constructor parameter
@@ -162,19 +348,61 @@ public class ModelGenerator {
 			entityAttributesAssignment.append(entityVarName).append(".")
 					.append(varName).append(" = ").append(varName)
 					.append("\n    ");
+
+			// build the binding statement
+			String bind = buildBinding(entityVarName, varName, varType,
+					scheme);
+			if (bind != null) {
+				if (bindAttributes.length() != 0) {
+					bindAttributes.append("\n    ");
+				}
+				bindAttributes.append(bind);
+			}
 		}
 
-		template = template.replace("${EntityAttributes}",
-				varDefinitions.toString());
-		template = template.replace("${ConstructorParams}",
-				constructorParams.toString());
-		template = template.replace("${EntityAttributesAssignment}",
+		values.put("EntityAttributes", varDefinitions.toString());
+		values.put("ConstructorParams", constructorParams.toString());
+		values.put("EntityAttributesAssignment",
 				entityAttributesAssignment.toString());
+		values.put("BindAttributes", bindAttributes.toString());
+	}
 
-		return template;
+	/**
+	 * Builds the statement that binds the posted value of an attribute, if it
+	 * was posted, converting it straight to the type of the attribute.
+	 * 
+	 * @param entityVarName
+	 * @param varName
+	 * @param varType
+	 * @param scheme
+	 * @return the statement, null if the type can not be bound
+	 */
+	private static String buildBinding(String entityVarName, String varName,
+			String varType, String scheme) {
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("EntityNameVar", entityVarName);
+		values.put("attributeName", varName);
+		values.put("attributeType", varType);
+		values.put("converter",
+				varType.substring(varType.lastIndexOf('.') + 1) + "Converter");
+
+		if (!TypeRegistry.isRegistered(varType)) {
+			// another model, JPA can refer to it without a query
+			return ("jpa".equals(scheme) ? BIND_REFERENCE_TEMPLATE
+					: BIND_RELATIONSHIP_TEMPLATE).render(values);
+		} else if (varType.equals("Date")
+				|| varType.equals(Calendar.class.getName())) {
+			return BIND_DATE_TEMPLATE.render(values);
+		} else if (CONVERTIBLE_TYPES.contains(varType)) {
+			return BIND_TEMPLATE.render(values);
+		}
+
+		System.out.println("* No converter for " + varType + ", "
+				+ varName + " is not bound to the posted value.");
+		return null;
 	}
 
-	private static String buildTestAttributes(String template,
+	private static void buildTestAttributes(Map<String, String> values,
 			String entityName, Map<String, String> attributes, String scheme) {
 		StringBuilder DependentObjects = new StringBuilder();
 		StringBuilder assertions = new StringBuilder();
@@ -198,8 +426,10 @@ public class ModelGenerator {
 			if (!TypeRegistry.isRegistered(varType)) {
 				dependency = true;
 				// initialize the dependency
-				var = DEPENDENCY_TEMPLATE.replace("${attributeName}", varName);
-				var = var.replace("${attributeType}", varType);
+				Map<String, String> dependencyValues = new HashMap<String, String>();
+				dependencyValues.put("attributeName", varName);
+				dependencyValues.put("attributeType", varType);
+				var = DEPENDENCY_TEMPLATE.render(dependencyValues);
 				DependentObjects.append(var).append("\n  ");
 
 				testDataVal = varName;
@@ -231,21 +461,16 @@ public class ModelGenerator {
 					String query = "jpa".equals(scheme) ? Character
 							.toUpperCase(varName.charAt(0))
 							+ varName.substring(1) : varName;
-					template = template.replace("${attributeName}", query);
-					template = template.replace("${attributeValue}",
-							testDataVal);
+					values.put("attributeName", query);
+					values.put("attributeValue", testDataVal);
 					pending = false;
 				}
 			}
 		}
 
-		template = template.replace("${DependentObjects}",
-				DependentObjects.toString());
-		template = template.replace("${TestDataValues}",
-				TestDataValues.toString());
-		template = template.replace("${assertions}", assertions.toString());
-
-		return template;
+		values.put("DependentObjects", DependentObjects.toString());
+		values.put("TestDataValues", TestDataValues.toString());
+		values.put("assertions", assertions.toString());
 	}
 
 	private static void generateYML(String entityName, String entityVarName,
@@ -16,9 +16,11 @@
 package play.modules.scalagen.jpa;
 
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.Map;
 
 import play.modules.scalagen.TypeRegistry;
+import play.modules.scalagen.util.CompiledTemplate;
 import play.modules.scalagen.util.TemplatesHelper;
 
 /**
@@ -38,13 +40,15 @@ public class SeleniumTestGenerator {
 	 */
 	public static void generate(String entityName,
 			Map<String, String> attributes) {
-		String template = TemplatesHelper.getTemplate("jpa/seleniumTests");
+		CompiledTemplate template = TemplatesHelper
+				.compile("jpa/seleniumTests");
 
 		String entityVarName = Character.toLowerCase(entityName.charAt(0))
 				+ entityName.substring(1);
 
-		template = template.replace("${EntityName}", entityName);
-		template = template.replace("${EntityNameVar}", entityVarName);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
 		StringBuilder formData = new StringBuilder();
 
@@ -70,9 +74,10 @@ public class SeleniumTestGenerator {
 			formData.append("type('id=").append(varName).append("', '")
 					.append(value).append("')\n");
 		}
-		template = template.replace("${formData}", formData);
-		template = template.replace("${editFormData}", editFormData);
+		values.put("formData", formData);
+		values.put("editFormData", editFormData);
 
-		TemplatesHelper.flush("test", "", entityName + ".test.html", template);
+		TemplatesHelper.flush("test", "", entityName + ".test.html",
+				template.render(values));
 	}
 }
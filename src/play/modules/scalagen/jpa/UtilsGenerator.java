@@ -12,35 +12,124 @@ import play.modules.scalagen.util.TemplatesHelper;
 public class UtilsGenerator {
 
 	/**
-	 * Generates utility classes needed for the code to function.
+	 * Starts the line of a helper template that holds its version, which is
+	 * moved on whenever the generated code needs a change to the helper.
 	 */
-	public static void generate() {
+	private static final String VERSION_MARKER = "// scalagen helper version ";
+
+	/**
+	 * Generates utility classes needed for the code to function. These are
+	 * shared by all entities, hence only one thread may generate them at a
+	 * time.
+	 */
+	public static synchronized void generate() {
 
 		// generate the form binder
-		if (!TemplatesHelper.exists("app", "utils", "HttpBinder.scala")) {
-			String template = TemplatesHelper.getTemplate("utils/HttpBinder");
+		String template = TemplatesHelper.getTemplate("utils/HttpBinder");
+		if (!isCurrent("HttpBinder.scala", template)) {
 			TemplatesHelper.flush("app", "utils", "HttpBinder.scala", template);
 
 			template = TemplatesHelper.getTemplate("utils/converterTests");
 			TemplatesHelper.flush("test", "tests", "ConverterTests.scala",
 					template);
-		} else {
-			System.out
-					.println("* app/utils/HttpBinder.scala already exists. Skipping.");
 		}
 
 		// generate the JQ Grid helper
-		if (!TemplatesHelper.exists("app", "utils", "JQGridHelper.scala")) {
-			String template = TemplatesHelper.getTemplate("utils/JQGridHelper");
+		template = TemplatesHelper.getTemplate("utils/JQGridHelper");
+		if (!isCurrent("JQGridHelper.scala", template)) {
 			TemplatesHelper.flush("app", "utils", "JQGridHelper.scala",
 					template);
 
 			template = TemplatesHelper.getTemplate("utils/jqGridHelperTests");
 			TemplatesHelper.flush("test", "tests", "JQGridHelperTests.scala",
 					template);
-		} else {
-			System.out
-					.println("* app/utils/JQGridHelper.scala already exists. Skipping.");
 		}
 	}
+
+	/**
+	 * Generates the record counts used by the grids that cache or estimate
+	 * their count.
+	 */
+	public static synchronized void generateRecordCounts() {
+		generateHelper("RecordCounts");
+	}
+
+	/**
+	 * Generates the conditional GET support of the controllers generated
+	 * with --http-cache.
+	 */
+	public static synchronized void generateHttpCache() {
+		generateHelper("HttpCache");
+	}
+
+	/**
+	 * Generates the helpers of the bulk and export actions of the
+	 * controllers.
+	 */
+	public static synchronized void generateControllerHelpers() {
+		generateHelper("BulkRequest");
+		generateHelper("Export");
+	}
+
+	/**
+	 * Generates a helper in app/utils from the template of the same name,
+	 * unless it exists already in the version of the template.
+	 * 
+	 * @param name
+	 */
+	private static void generateHelper(String name) {
+		String filename = name + ".scala";
+		String template = TemplatesHelper.getTemplate("utils/" + name);
+		if (!isCurrent(filename, template)) {
+			TemplatesHelper.flush("app", "utils", filename, template);
+		}
+	}
+
+	/**
+	 * Checks if a helper exists in the version of its template. A helper
+	 * generated by an earlier version of the module does not fit the code
+	 * generated now, so it is reported as out of date, to be generated again.
+	 * 
+	 * @param filename
+	 * @param template
+	 * @return true if the helper exists and is up to date
+	 */
+	private static boolean isCurrent(String filename, String template) {
+		String existing = TemplatesHelper.read("app", "utils", filename);
+		if (existing == null) {
+			return false;
+		}
+
+		String version = getVersion(template);
+		String existingVersion = getVersion(existing);
+		if (version == null || version.equals(existingVersion)) {
+			System.out.println("* app/utils/" + filename
+					+ " already exists. Skipping.");
+			return true;
+		}
+
+		System.out.println("* app/utils/" + filename + " is out of date ("
+				+ (existingVersion == null ? "no version" : "version "
+						+ existingVersion) + ", needs version " + version
+				+ "). Generating it again, changes made to it are lost.");
+		return false;
+	}
+
+	/**
+	 * Reads the version of a helper from its marker line.
+	 * 
+	 * @param source
+	 * @return the version, null if the helper has none
+	 */
+	private static String getVersion(String source) {
+		int start = source.indexOf(VERSION_MARKER);
+		if (start < 0) {
+			return null;
+		}
+		start += VERSION_MARKER.length();
+
+		int end = source.indexOf('\n', start);
+		return source.substring(start, end < 0 ? source.length() : end)
+				.trim();
+	}
 }
@@ -15,10 +15,14 @@
  */
 package play.modules.scalagen.jpa;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import play.modules.scalagen.TypeRegistry;
+import play.modules.scalagen.util.CompiledTemplate;
 import play.modules.scalagen.util.TemplatesHelper;
 
 /**
@@ -37,13 +41,17 @@ import play.modules.scalagen.util.TemplatesHelper;
  */
 public class ViewGenerator {
 
+	private static final CompiledTemplate COL_MODEL_FORMAT = CompiledTemplate
+			.parse("{ name: '${header}', index: '${attribute}', hidden: false, sortable: true ${formatOptions} }");
+
 	/**
 	 * 
 	 * @param entityName
 	 * @param attributes
+	 * @param options
 	 */
 	public static void generate(String entityName,
-			Map<String, String> attributes) {
+			Map<String, String> attributes, Map<String, String> options) {
 
 		String entityVarName = Character.toLowerCase(entityName.charAt(0))
 				+ entityName.substring(1);
@@ -54,12 +62,13 @@ public class ViewGenerator {
 		generateNew(entityName, entityVarName, attributes);
 		generateEdit(entityName, entityVarName, attributes);
 		generateForm(entityName, entityVarName, attributes);
-		generateJQueryJS(entityName, entityVarName, attributes);
+		generateJQueryJS(entityName, entityVarName, attributes, options);
 	}
 
 	private static void generateIndex(String entityName, String entityVarName,
 			Map<String, String> attributes) {
-		String indexTemplate = TemplatesHelper.getTemplate("jpa/view_index");
+		CompiledTemplate indexTemplate = TemplatesHelper
+				.compile("jpa/view_index");
 
 		StringBuilder tableHeaders = new StringBuilder();
 		StringBuilder rowValues = new StringBuilder();
@@ -77,23 +86,21 @@ public class ViewGenerator {
 					.append(varName).append("</td>\n");
 		}
 
-		indexTemplate = indexTemplate.replace("${TableHeaders}",
-				tableHeaders.toString());
-		indexTemplate = indexTemplate.replace("${RowValues}",
-				rowValues.toString());
-
-		indexTemplate = indexTemplate.replace("${EntityName}", entityName);
-		indexTemplate = indexTemplate
-				.replace("${EntityNameVar}", entityVarName);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("TableHeaders", tableHeaders);
+		values.put("RowValues", rowValues);
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
 		TemplatesHelper.flush("app",
 				"views" + System.getProperty("file.separator") + entityVarName
-						+ "s", "index.scala.html", indexTemplate);
+						+ "s", "index.scala.html", indexTemplate.render(values));
 	}
 
 	private static void generateShow(String entityName, String entityVarName,
 			Map<String, String> attributes) {
-		String indexTemplate = TemplatesHelper.getTemplate("jpa/view_show");
+		CompiledTemplate indexTemplate = TemplatesHelper
+				.compile("jpa/view_show");
 
 		StringBuilder tableHeaders = new StringBuilder();
 
@@ -110,47 +117,46 @@ public class ViewGenerator {
 					.append(varName).append("\n");
 		}
 
-		indexTemplate = indexTemplate.replace("${ShowDetails}",
-				tableHeaders.toString());
-
-		indexTemplate = indexTemplate.replace("${EntityName}", entityName);
-		indexTemplate = indexTemplate
-				.replace("${EntityNameVar}", entityVarName);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("ShowDetails", tableHeaders);
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
 		TemplatesHelper.flush("app",
 				"views" + System.getProperty("file.separator") + entityVarName
-						+ "s", "show.scala.html", indexTemplate);
+						+ "s", "show.scala.html", indexTemplate.render(values));
 	}
 
 	private static void generateNew(String entityName, String entityVarName,
 			Map<String, String> attributes) {
-		String indexTemplate = TemplatesHelper.getTemplate("jpa/view_new");
+		CompiledTemplate indexTemplate = TemplatesHelper.compile("jpa/view_new");
 
-		indexTemplate = indexTemplate.replace("${EntityName}", entityName);
-		indexTemplate = indexTemplate
-				.replace("${EntityNameVar}", entityVarName);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
 		TemplatesHelper.flush("app",
 				"views" + System.getProperty("file.separator") + entityVarName
-						+ "s", "newValue.scala.html", indexTemplate);
+						+ "s", "newValue.scala.html", indexTemplate.render(values));
 	}
 
 	private static void generateEdit(String entityName, String entityVarName,
 			Map<String, String> attributes) {
-		String indexTemplate = TemplatesHelper.getTemplate("jpa/view_edit");
+		CompiledTemplate indexTemplate = TemplatesHelper.compile("jpa/view_edit");
 
-		indexTemplate = indexTemplate.replace("${EntityName}", entityName);
-		indexTemplate = indexTemplate
-				.replace("${EntityNameVar}", entityVarName);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
 		TemplatesHelper.flush("app",
 				"views" + System.getProperty("file.separator") + entityVarName
-						+ "s", "edit.scala.html", indexTemplate);
+						+ "s", "edit.scala.html", indexTemplate.render(values));
 	}
 
 	private static void generateForm(String entityName, String entityVarName,
 			Map<String, String> attributes) {
-		String formTemplate = TemplatesHelper.getTemplate("jpa/view_form");
+		CompiledTemplate formTemplate = TemplatesHelper
+				.compile("jpa/view_form");
 
 		StringBuilder formData = new StringBuilder();
 		formData.append(
@@ -177,18 +183,17 @@ public class ViewGenerator {
 
 		}
 
-		formTemplate = formTemplate.replace("${FormInputs}",
-				formData.toString());
-
-		formTemplate = formTemplate.replace("${EntityName}", entityName);
-		formTemplate = formTemplate.replace("${EntityNameVar}", entityVarName);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("FormInputs", formData);
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
 
 		TemplatesHelper.flush("app",
 				"views" + System.getProperty("file.separator") + entityVarName
-						+ "s", "form.scala.html", formTemplate);
+						+ "s", "form.scala.html", formTemplate.render(values));
 	}
 
-	private static void generateDateInput() {
+	private static synchronized void generateDateInput() {
 		if (!TemplatesHelper.exists("app", "views", "dateInput.scala.html")) {
 			String indexTemplate = TemplatesHelper
 					.getTemplate("jpa/view_dateInput");
@@ -210,41 +215,56 @@ public class ViewGenerator {
 	}
 
 	private static void generateJQueryJS(String entityName,
-			String entityVarName, Map<String, String> attributes) {
-		String jsTemplate = TemplatesHelper.getTemplate("jpa/grid_js");
+			String entityVarName, Map<String, String> attributes,
+			Map<String, String> options) {
+		CompiledTemplate jsTemplate = TemplatesHelper.compile("jpa/grid_js");
 		StringBuilder colModel = new StringBuilder();
 
-		final String COL_MODEL_FORMAT = "{ name: '${header}', index: '${attribute}', hidden: false, sortable: true ${formatOptions} }";
+		for (String varName : getGridColumns(attributes)) {
+			String varType = TypeRegistry.getTypeName(attributes.get(varName));
 
-		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-			String varName = attribute.getKey();
-			String varType = attribute.getValue();
-			varType = TypeRegistry.getTypeName(varType);
-			String model = COL_MODEL_FORMAT.replace("${attribute}", varName);
-			model = model.replace("${header}", capitalize(varName));
+			Map<String, String> columnValues = new HashMap<String, String>();
+			columnValues.put("attribute", varName);
+			columnValues.put("header", capitalize(varName));
 
 			if (varType.equals("Date")
 					|| varType.equals(Calendar.class.getName())) {
 				String formatoptions = ", formatter:'date', formatoptions: { srcformat: 'Y-m-d H:i:sO', newformat: 'F dS Y' }";
-				model = model.replace("${formatOptions}", formatoptions);
+				columnValues.put("formatOptions", formatoptions);
 
 			} else {
-				model = model.replace("${formatOptions}", "");
+				columnValues.put("formatOptions", "");
 			}
 
 			if (colModel.length() != 0) {
 				colModel.append(", \n");
 			}
 
-			colModel.append(model);
+			colModel.append(COL_MODEL_FORMAT.render(columnValues));
 		}
 
-		jsTemplate = jsTemplate.replace("${EntityName}", entityName);
-		jsTemplate = jsTemplate.replace("${EntityNameVar}", entityVarName);
-		jsTemplate = jsTemplate.replace("${ColumnModel}", colModel);
+		Map<String, CharSequence> values = new HashMap<String, CharSequence>();
+		values.put("EntityName", entityName);
+		values.put("EntityNameVar", entityVarName);
+		values.put("ColumnModel", colModel);
+		values.put("PagingOptions", ControllerGenerator
+				.isKeysetPagination(options) ? TemplatesHelper
+				.getTemplate("jpa/grid_js_keyset") + "\n        " : "");
 
 		TemplatesHelper.flush("public", "javascripts", entityVarName + "s.js",
-				jsTemplate);
+				jsTemplate.render(values));
+	}
+
+	/**
+	 * Gets the attributes shown as columns on the grid, in the order of the
+	 * columns. The generated grid controllers list the cells of each row in
+	 * the same order.
+	 * 
+	 * @param attributes
+	 * @return the attribute names
+	 */
+	static List<String> getGridColumns(Map<String, String> attributes) {
+		return new ArrayList<String>(attributes.keySet());
 	}
 
 	private static String capitalize(String value) {
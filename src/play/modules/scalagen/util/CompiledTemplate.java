@@ -0,0 +1,132 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A template parsed into literal segments and <code>${name}</code>
+ * placeholder slots. Instances are immutable and can be shared between
+ * threads; rendering fills in all the placeholders in a single pass.
+ * </p>
+ */
+public final class CompiledTemplate {
+
+	private static final String PLACEHOLDER_START = "${";
+	private static final String PLACEHOLDER_END = "}";
+
+	private final String source;
+	/** literal text, one segment more than there are placeholders */
+	private final String[] literals;
+	/** placeholder names, in order of appearance */
+	private final String[] placeholders;
+	private final int literalLength;
+
+	private CompiledTemplate(String source, String[] literals,
+			String[] placeholders) {
+		this.source = source;
+		this.literals = literals;
+		this.placeholders = placeholders;
+
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Parses the template text.
+	 *
+	 * @param source
+	 * @return the compiled template
+	 */
+	public static CompiledTemplate parse(String source) {
+		List<String> literals = new ArrayList<String>();
+		List<String> placeholders = new ArrayList<String>();
+
+		int position = 0;
+		while (true) {
+			int start = source.indexOf(PLACEHOLDER_START, position);
+			int end = start == -1 ? -1 : source.indexOf(PLACEHOLDER_END,
+					start + PLACEHOLDER_START.length());
+			if (end == -1) {
+				break;
+			}
+
+			literals.add(source.substring(position, start));
+			placeholders.add(source.substring(
+					start + PLACEHOLDER_START.length(), end));
+			position = end + PLACEHOLDER_END.length();
+		}
+		literals.add(source.substring(position));
+
+		return new CompiledTemplate(source,
+				literals.toArray(new String[literals.size()]),
+				placeholders.toArray(new String[placeholders.size()]));
+	}
+
+	/**
+	 * Renders the template. Placeholders without a value are left untouched.
+	 *
+	 * @param values
+	 *            placeholder values keyed by placeholder name (without the
+	 *            <code>${}</code>)
+	 * @return the rendered text
+	 */
+	public String render(Map<String, ? extends CharSequence> values) {
+		boolean timed = Timings.isEnabled();
+		long started = timed ? System.nanoTime() : 0;
+
+		CharSequence[] resolved = new CharSequence[placeholders.length];
+
+		int length = literalLength;
+		for (int i = 0; i < placeholders.length; i++) {
+			resolved[i] = values.get(placeholders[i]);
+			length += resolved[i] != null ? resolved[i].length()
+					: placeholders[i].length() + PLACEHOLDER_START.length()
+							+ PLACEHOLDER_END.length();
+		}
+
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < placeholders.length; i++) {
+			sb.append(literals[i]);
+			if (resolved[i] != null) {
+				sb.append(resolved[i]);
+			} else {
+				sb.append(PLACEHOLDER_START).append(placeholders[i])
+						.append(PLACEHOLDER_END);
+			}
+		}
+		sb.append(literals[placeholders.length]);
+
+		String rendered = sb.toString();
+		if (timed) {
+			Timings.rendered(started, rendered);
+		}
+		return rendered;
+	}
+
+	/**
+	 * @return the text the template was parsed from
+	 */
+	public String getSource() {
+		return source;
+	}
+}
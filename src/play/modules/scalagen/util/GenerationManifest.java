@@ -0,0 +1,325 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * <p>
+ * Keeps track of what was generated in earlier runs, so that re-running the
+ * generator only touches files whose content actually changes. The manifest
+ * is stored in <code>.scalagen/manifest</code> under the application
+ * directory and records:
+ * <ul>
+ * <li>a hash of the inputs of each entity (attributes, templates and
+ * generator version) along with the files generated for it.
+ * <li>a hash, size and modification time of each generated file.
+ * </ul>
+ * </p>
+ */
+public class GenerationManifest {
+
+	private static final String BASE_DIR = System
+			.getProperty("application.path");
+	private static final String MANIFEST = ".scalagen/manifest";
+
+	private static final String ENTITY_PREFIX = "entity.";
+	private static final String OUTPUTS_PREFIX = "outputs.";
+	private static final String FILE_PREFIX = "file.";
+
+	private static final Properties entries = new Properties();
+
+	/** files written for the entity being generated by the current thread */
+	private static final ThreadLocal<List<String>> outputs = new ThreadLocal<List<String>>();
+
+	private static String generatorFingerprint;
+
+	/**
+	 * Loads the manifest of the previous run, if any.
+	 */
+	public static synchronized void load() {
+		entries.clear();
+
+		File manifest = new File(BASE_DIR, MANIFEST);
+		if (!manifest.exists()) {
+			return;
+		}
+
+		try {
+			InputStream in = new FileInputStream(manifest);
+			try {
+				entries.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			// a broken manifest only means that everything is regenerated
+			System.out.println("* Could not read " + MANIFEST
+					+ ", regenerating everything.");
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Saves the manifest for the next run.
+	 */
+	public static synchronized void save() {
+		File manifest = new File(BASE_DIR, MANIFEST);
+
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entries.store(out, "Generated by scalagen, do not edit");
+			TemplatesHelper.writeAtomically(manifest, out.toByteArray());
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Checks if an entity was generated earlier from exactly the same inputs
+	 * and none of the files generated for it have been modified or removed
+	 * since.
+	 *
+	 * @param entityName
+	 * @param inputs
+	 *            anything that affects the generated code of the entity
+	 * @return true if the entity need not be generated again
+	 */
+	public static boolean isUpToDate(String entityName, String inputs) {
+		String recorded = entries.getProperty(ENTITY_PREFIX + entityName);
+		if (recorded == null || !recorded.equals(hashOf(inputs))) {
+			return false;
+		}
+
+		String files = entries.getProperty(OUTPUTS_PREFIX + entityName, "");
+		for (String path : files.split(",")) {
+			if (path.length() != 0 && !isUntouched(path)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Marks the start of the generation of an entity by the current thread.
+	 * All files flushed until {@link #end(String, String)} are recorded
+	 * against the entity.
+	 */
+	public static void begin() {
+		outputs.set(new ArrayList<String>());
+	}
+
+	/**
+	 * Records the successful generation of an entity.
+	 *
+	 * @param entityName
+	 * @param inputs
+	 */
+	public static void end(String entityName, String inputs) {
+		List<String> files = outputs.get();
+		outputs.remove();
+
+		StringBuilder sb = new StringBuilder();
+		for (String path : files) {
+			if (sb.length() != 0) {
+				sb.append(",");
+			}
+			sb.append(path);
+		}
+
+		entries.setProperty(ENTITY_PREFIX + entityName, hashOf(inputs));
+		entries.setProperty(OUTPUTS_PREFIX + entityName, sb.toString());
+	}
+
+	/**
+	 * Checks if a file already holds the given content, in which case it
+	 * need not be written again.
+	 *
+	 * @param file
+	 * @param content
+	 * @return true if the file is up to date
+	 */
+	public static boolean isUnchanged(File file, String content) {
+		if (!file.exists()) {
+			return false;
+		}
+
+		String path = relativePath(file);
+		String hash = hashOf(content);
+		String recorded = entries.getProperty(FILE_PREFIX + path);
+
+		boolean unchanged;
+		if (recorded != null && recorded.equals(stamp(hash, file))) {
+			unchanged = true;
+		} else {
+			// not generated by us (or modified since), compare the content.
+			unchanged = hash.equals(hashOf(file));
+		}
+
+		if (unchanged) {
+			recordOutput(path, hash, file);
+		}
+		return unchanged;
+	}
+
+	/**
+	 * Records a file that has just been written.
+	 *
+	 * @param file
+	 * @param content
+	 */
+	public static void written(File file, String content) {
+		recordOutput(relativePath(file), hashOf(content), file);
+	}
+
+	/**
+	 * Computes a fingerprint of the generator itself, i.e. its classes and
+	 * templates. Any upgrade of the module changes the fingerprint.
+	 *
+	 * @return the fingerprint
+	 */
+	public static synchronized String getGeneratorFingerprint() {
+		if (generatorFingerprint == null) {
+			MessageDigest digest = newDigest();
+			try {
+				File location = new File(GenerationManifest.class
+						.getProtectionDomain().getCodeSource().getLocation()
+						.toURI());
+				digestFile(digest, location);
+			} catch (Exception ex) {
+				// unknown location, fall back to the version alone.
+			}
+			generatorFingerprint = toHex(digest.digest());
+		}
+		return generatorFingerprint;
+	}
+
+	private static void recordOutput(String path, String hash, File file) {
+		entries.setProperty(FILE_PREFIX + path, stamp(hash, file));
+
+		List<String> files = outputs.get();
+		if (files != null) {
+			files.add(path);
+		}
+	}
+
+	private static boolean isUntouched(String path) {
+		File file = new File(BASE_DIR, path);
+		String recorded = entries.getProperty(FILE_PREFIX + path);
+		if (recorded == null || !file.exists()) {
+			return false;
+		}
+
+		String hash = recorded.substring(0, recorded.indexOf(' '));
+		return recorded.equals(stamp(hash, file));
+	}
+
+	private static String stamp(String hash, File file) {
+		return hash + " " + file.length() + " " + file.lastModified();
+	}
+
+	/**
+	 * @param file
+	 * @return the path of a file relative to the application, with forward
+	 *         slashes
+	 */
+	static String relativePath(File file) {
+		String base = new File(BASE_DIR).getAbsolutePath();
+		String path = file.getAbsolutePath();
+		if (path.startsWith(base)) {
+			path = path.substring(base.length());
+		}
+
+		path = path.replace(File.separatorChar, '/');
+		while (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		return path;
+	}
+
+	private static String hashOf(String content) {
+		MessageDigest digest = newDigest();
+		try {
+			digest.update(content.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		return toHex(digest.digest());
+	}
+
+	private static String hashOf(File file) {
+		MessageDigest digest = newDigest();
+		try {
+			digestFile(digest, file);
+		} catch (IOException e) {
+			return "";
+		}
+		return toHex(digest.digest());
+	}
+
+	private static void digestFile(MessageDigest digest, File file)
+			throws IOException {
+		if (file.isDirectory()) {
+			String[] names = file.list();
+			Arrays.sort(names);
+			for (String name : names) {
+				digest.update(name.getBytes("UTF-8"));
+				digestFile(digest, new File(file, name));
+			}
+			return;
+		}
+
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
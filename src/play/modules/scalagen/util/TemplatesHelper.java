@@ -15,14 +15,19 @@
  */
 package play.modules.scalagen.util;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>
@@ -35,46 +40,224 @@ public class TemplatesHelper {
 
 	private static final String BASE_DIR = System
 			.getProperty("application.path");
-	private static final String SLASH = System.getProperty("file.separator");
+	private static final String CHARSET = "UTF-8";
+
+	/** directories known to exist */
+	private static final ConcurrentMap<File, Boolean> directories = new ConcurrentHashMap<File, Boolean>();
+
+	/** directories with files renamed in them since they were last synced */
+	private static final ConcurrentMap<File, Boolean> unsynced = new ConcurrentHashMap<File, Boolean>();
+
+	/** compiled templates, keyed by template name */
+	private static final ConcurrentMap<String, CompiledTemplate> templates = new ConcurrentHashMap<String, CompiledTemplate>();
 
 	public static String getTemplate(String name) {
+		return compile(name).getSource();
+	}
+
+	/**
+	 * Gets the compiled form of a template. Templates are read and parsed
+	 * only once per process, later calls are served from a cache.
+	 * 
+	 * @param name
+	 * @return the compiled template
+	 */
+	public static CompiledTemplate compile(String name) {
+		CompiledTemplate template = templates.get(name);
+		if (template == null) {
+			template = load(name);
+
+			CompiledTemplate existing = templates.putIfAbsent(name, template);
+			if (existing != null) {
+				template = existing;
+			}
+		}
+		return template;
+	}
+
+	/**
+	 * Reads and parses a template, bypassing the cache.
+	 * 
+	 * @param name
+	 * @return the compiled template
+	 */
+	static CompiledTemplate load(String name) {
+		boolean timed = Timings.isEnabled();
+		long started = timed ? System.nanoTime() : 0;
 
 		InputStream in = TemplatesHelper.class.getClassLoader()
 				.getResourceAsStream("templates/" + name);
-		String template = read(in).trim();
+		String source = read(in).trim();
+		CompiledTemplate template = CompiledTemplate.parse(source);
+
+		if (timed) {
+			Timings.loaded(started, source);
+		}
 		return template;
 	}
 
 	public static void flush(String parentDirectory, String directory,
 			String filename, String content) {
-		try {
-			String dirName = BASE_DIR + SLASH + parentDirectory + SLASH
-					+ directory;
+		boolean timed = Timings.isEnabled();
+		long started = timed ? System.nanoTime() : 0;
+		File outputFile = getFile(parentDirectory, directory, filename);
 
-			File dir = new File(dirName);
-			if (!dir.exists()) {
-				dir.mkdir();
+		// leave files alone if their content would not change, so that Play
+		// does not need to recompile them.
+		if (GenerationManifest.isUnchanged(outputFile, content)) {
+			System.out.println("* Unchanged " + outputFile);
+			if (timed) {
+				Timings.flushed(outputFile, started, content, false);
 			}
+			return;
+		}
+
+		try {
+			writeAtomically(outputFile, content.getBytes(CHARSET));
+			System.out.println("* Created " + outputFile);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		GenerationManifest.written(outputFile, content);
 
-			String outputFile = dirName + SLASH + filename;
+		if (timed) {
+			Timings.flushed(outputFile, started, content, true);
+		}
+	}
 
-			// remove double seperators in the file name
-			outputFile = outputFile.replace(SLASH + SLASH, SLASH);
+	/**
+	 * Writes a file such that it either has the complete new content or its
+	 * old content, but never anything in between. The content is written and
+	 * synced to a temporary file next to the target which is then renamed to
+	 * the target name. The directory is noted to be synced by
+	 * {@link #syncDirectories()}, so that the rename lasts. Missing parent
+	 * directories are created.
+	 * <p>
+	 * Some platforms, e.g. Windows, can not rename over an existing file. The
+	 * target is then deleted before renaming, which is not atomic: should the
+	 * rename fail, the target is missing and its new content is left in the
+	 * temporary file, whose path is reported.
+	 * </p>
+	 * 
+	 * @param file
+	 * @param content
+	 * @throws IOException
+	 */
+	public static void writeAtomically(File file, byte[] content)
+			throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		ensureDirectory(dir);
 
-			OutputStreamWriter fstream = new OutputStreamWriter(
-					new FileOutputStream(outputFile));
-			BufferedWriter out = new BufferedWriter(fstream);
+		File temp = File.createTempFile("." + file.getName(), ".tmp", dir);
+		boolean keep = false;
+		try {
+			FileOutputStream fstream = new FileOutputStream(temp);
 			try {
+				OutputStream out = new BufferedOutputStream(fstream);
 				out.write(content);
-				System.out.println("* Created " + outputFile);
+				out.flush();
+				fstream.getFD().sync();
 			} finally {
-				out.close();
+				fstream.close();
+			}
+
+			if (!temp.renameTo(file)) {
+				// some platforms do not allow renaming over an existing file
+				file.delete();
+				if (!temp.renameTo(file)) {
+					keep = true;
+					throw new IOException("Could not write " + file
+							+ ", its new content is in " + temp);
+				}
+			}
+			unsynced.put(dir, Boolean.TRUE);
+		} finally {
+			if (!keep && temp.exists()) {
+				temp.delete();
 			}
-		} catch (IOException ex) {
-			throw new RuntimeException(ex);
 		}
 	}
 
+	/**
+	 * Syncs the directories of the files written since the last call, once
+	 * each, so that the files renamed in them stay renamed after a crash.
+	 * Called once a run has written all its files, as syncing a directory
+	 * after every file costs a disk flush per file.
+	 */
+	public static void syncDirectories() {
+		for (File dir : unsynced.keySet()) {
+			unsynced.remove(dir);
+			try {
+				syncDirectory(dir);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Syncs a directory, so that the files renamed in it stay renamed after a
+	 * crash. A directory can only be opened from Java 7 on, through
+	 * FileChannel.open, which is looked up by reflection as the module is
+	 * built for Java 5. On older runtimes, and on platforms that can not open
+	 * directories, the directory is not synced.
+	 * 
+	 * @param dir
+	 * @throws IOException
+	 */
+	private static void syncDirectory(File dir) throws IOException {
+		FileChannel channel;
+		try {
+			Class<?> pathClass = Class.forName("java.nio.file.Path");
+			Class<?> optionClass = Class.forName("java.nio.file.OpenOption");
+			Object options = Array.newInstance(optionClass, 1);
+			Array.set(options, 0, Class.forName(
+					"java.nio.file.StandardOpenOption").getField("READ").get(
+					null));
+
+			Object path = File.class.getMethod("toPath").invoke(dir);
+			channel = (FileChannel) FileChannel.class.getMethod("open",
+					pathClass, options.getClass()).invoke(null, path, options);
+		} catch (Exception e) {
+			// not available on this runtime or platform
+			return;
+		}
+
+		try {
+			channel.force(true);
+		} catch (IOException e) {
+			// some platforms can open directories but not sync them
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Creates a directory along with its parents, at most once per run.
+	 * 
+	 * @param dir
+	 * @throws IOException
+	 */
+	private static void ensureDirectory(File dir) throws IOException {
+		if (directories.containsKey(dir)) {
+			return;
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Could not create directory " + dir);
+		}
+		directories.put(dir, Boolean.TRUE);
+	}
+
+	/**
+	 * Forgets the directories created so far. Needed when the generator is
+	 * run several times in the same process, as directories may have been
+	 * removed in between.
+	 */
+	public static void resetDirectories() {
+		directories.clear();
+	}
+
 	/**
 	 * Checks if a file already exists by the provided name.
 	 * 
@@ -85,9 +268,35 @@ public class TemplatesHelper {
 	 */
 	public static boolean exists(String parentDirectory, String directory,
 			String filename) {
-		String fileName = BASE_DIR + SLASH + parentDirectory + SLASH
-				+ directory + SLASH + filename;
-		return new File(fileName).exists();
+		return getFile(parentDirectory, directory, filename).exists();
+	}
+
+	/**
+	 * Reads a file.
+	 * 
+	 * @param parentDirectory
+	 * @param directory
+	 * @param filename
+	 * @return the content of the file, null if it does not exist
+	 */
+	public static String read(String parentDirectory, String directory,
+			String filename) {
+		File file = getFile(parentDirectory, directory, filename);
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			return read(new FileInputStream(file));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static File getFile(String parentDirectory, String directory,
+			String filename) {
+		File dir = new File(new File(BASE_DIR, parentDirectory), directory);
+		return new File(dir, filename);
 	}
 
 	public static boolean canOverwrite(String parentDirectory,
@@ -117,7 +326,8 @@ public class TemplatesHelper {
 	private static String read(InputStream in) {
 		StringBuilder sb = new StringBuilder();
 		try {
-			BufferedReader br = new BufferedReader(new InputStreamReader(in));
+			BufferedReader br = new BufferedReader(new InputStreamReader(in,
+					CHARSET));
 			String strLine;
 			// Read File Line By Line
 
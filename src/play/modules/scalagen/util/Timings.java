@@ -0,0 +1,291 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  Created on: 18th October 2026
+ */
+package play.modules.scalagen.util;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Measures where the time of a run goes: initialising Play, loading
+ * templates, rendering them and flushing the generated files. Timings are
+ * only taken between {@link #start()} and {@link #stop()}, otherwise the
+ * phases cost a single check each.
+ * </p>
+ * <p>
+ * Rendering is attributed to the file flushed next by the same thread, as
+ * every generator renders the content of a file right before flushing it.
+ * </p>
+ */
+public class Timings {
+
+	private static final Phase INIT = new Phase("init");
+	private static final Phase LOAD = new Phase("load");
+	private static final Phase RENDER = new Phase("render");
+	private static final Phase FLUSH = new Phase("flush");
+	private static final Phase[] PHASES = { INIT, LOAD, RENDER, FLUSH };
+
+	private static volatile boolean enabled;
+	private static long started;
+	private static long elapsed;
+
+	/** nanoseconds Play took to initialise, not reported yet */
+	private static volatile long initNanos = -1;
+
+	private static final List<FileTiming> files = Collections
+			.synchronizedList(new ArrayList<FileTiming>());
+
+	/** rendering done by the current thread since its last flush */
+	private static final ThreadLocal<long[]> pendingRender = new ThreadLocal<long[]>() {
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	/**
+	 * Records the time taken to initialise Play, which is reported by the
+	 * next timed run.
+	 *
+	 * @param nanos
+	 */
+	public static void initialised(long nanos) {
+		initNanos = nanos;
+	}
+
+	/**
+	 * Starts taking timings, forgetting those of earlier runs.
+	 */
+	public static synchronized void start() {
+		for (Phase phase : PHASES) {
+			phase.reset();
+		}
+		files.clear();
+
+		if (initNanos >= 0) {
+			INIT.add(initNanos, 0);
+			initNanos = -1;
+		}
+		started = System.nanoTime();
+		enabled = true;
+	}
+
+	/**
+	 * Stops taking timings.
+	 */
+	public static synchronized void stop() {
+		enabled = false;
+		elapsed = System.nanoTime() - started;
+	}
+
+	/**
+	 * @return true if timings are being taken
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records the loading of a template.
+	 *
+	 * @param started
+	 *            System.nanoTime at the start of the load
+	 * @param source
+	 *            the template text
+	 */
+	static void loaded(long started, String source) {
+		LOAD.add(System.nanoTime() - started, bytes(source));
+	}
+
+	/**
+	 * Records the rendering of a template.
+	 *
+	 * @param started
+	 *            System.nanoTime at the start of the rendering
+	 * @param output
+	 *            the rendered text
+	 */
+	static void rendered(long started, String output) {
+		long nanos = System.nanoTime() - started;
+		RENDER.add(nanos, bytes(output));
+		pendingRender.get()[0] += nanos;
+	}
+
+	/**
+	 * Records the flushing of a file.
+	 *
+	 * @param file
+	 * @param started
+	 *            System.nanoTime at the start of the flush
+	 * @param content
+	 * @param written
+	 *            false if the file was left alone as its content is unchanged
+	 */
+	static void flushed(File file, long started, String content,
+			boolean written) {
+		long nanos = System.nanoTime() - started;
+		long bytes = bytes(content);
+		FLUSH.add(nanos, bytes);
+
+		long[] render = pendingRender.get();
+		files.add(new FileTiming(GenerationManifest.relativePath(file),
+				render[0], nanos, bytes, written));
+		render[0] = 0;
+	}
+
+	/**
+	 * Describes the timings as a table, per phase and then per file.
+	 *
+	 * @return the report
+	 */
+	public static synchronized String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\nTimings\n");
+		sb.append(String.format(Locale.US, "%-10s %8s %12s %12s\n", "phase",
+				"calls", "ms", "bytes"));
+		for (Phase phase : PHASES) {
+			sb.append(String.format(Locale.US, "%-10s %8d %12.3f %12d\n",
+					phase.name, phase.calls.get(), millis(phase.nanos.get()),
+					phase.bytes.get()));
+		}
+		sb.append(String.format(Locale.US, "%-10s %8s %12.3f\n", "total", "",
+				millis(totalNanos())));
+
+		sb.append(String.format(Locale.US, "\n%-50s %10s %10s %10s\n",
+				"file", "render ms", "flush ms", "bytes"));
+		for (FileTiming file : sortedFiles()) {
+			sb.append(String.format(Locale.US, "%-50s %10.3f %10.3f %10d%s\n",
+					file.path, millis(file.renderNanos),
+					millis(file.flushNanos), file.bytes, file.written ? ""
+							: " (unchanged)"));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Describes the timings as JSON, with the same data as the report.
+	 *
+	 * @return the JSON
+	 */
+	public static synchronized String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"totalMs\": ").append(format(totalNanos()));
+		sb.append(",\n  \"phases\": {");
+		for (int i = 0; i < PHASES.length; i++) {
+			Phase phase = PHASES[i];
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("    \"").append(phase.name).append("\": {\"calls\": ")
+					.append(phase.calls.get()).append(", \"ms\": ").append(
+							format(phase.nanos.get())).append(", \"bytes\": ")
+					.append(phase.bytes.get()).append("}");
+		}
+		sb.append("\n  },\n  \"files\": [");
+		List<FileTiming> sorted = sortedFiles();
+		for (int i = 0; i < sorted.size(); i++) {
+			FileTiming file = sorted.get(i);
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("    {\"path\": \"").append(escape(file.path)).append(
+					"\", \"renderMs\": ").append(format(file.renderNanos))
+					.append(", \"flushMs\": ").append(format(file.flushNanos))
+					.append(", \"bytes\": ").append(file.bytes).append(
+							", \"written\": ").append(file.written).append("}");
+		}
+		sb.append("\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	private static long totalNanos() {
+		return INIT.nanos.get()
+				+ (enabled ? System.nanoTime() - started : elapsed);
+	}
+
+	private static List<FileTiming> sortedFiles() {
+		List<FileTiming> sorted;
+		synchronized (files) {
+			sorted = new ArrayList<FileTiming>(files);
+		}
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	private static long bytes(String text) {
+		try {
+			return text.getBytes("UTF-8").length;
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static String format(long nanos) {
+		return String.format(Locale.US, "%.3f", millis(nanos));
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static class Phase {
+		private final String name;
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		private void add(long nanos, long bytes) {
+			this.calls.incrementAndGet();
+			this.nanos.addAndGet(nanos);
+			this.bytes.addAndGet(bytes);
+		}
+
+		private void reset() {
+			calls.set(0);
+			nanos.set(0);
+			bytes.set(0);
+		}
+	}
+
+	private static class FileTiming implements Comparable<FileTiming> {
+		private final String path;
+		private final long renderNanos;
+		private final long flushNanos;
+		private final long bytes;
+		private final boolean written;
+
+		private FileTiming(String path, long renderNanos, long flushNanos,
+				long bytes, boolean written) {
+			this.path = path;
+			this.renderNanos = renderNanos;
+			this.flushNanos = flushNanos;
+			this.bytes = bytes;
+			this.written = written;
+		}
+
+		public int compareTo(FileTiming other) {
+			return path.compareTo(other.path);
+		}
+	}
+}